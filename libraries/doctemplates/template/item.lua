@@ -142,7 +142,9 @@ return
 #		else
 #			local paramlist = niceparmlist(fdef.returns[1].types)
 #			local isreturn = fdef.returns and #fdef.returns > 0 and #paramlist > 0
-#			local isdescription = fdef.returns and fdef.returns[1].description and #format(fdef.returns[1].description) > 0
+#			-- Markdown rendering may be deferred by markers around raw text, they do not count as content
+#			local description = fdef.returns and fdef.returns[1].description
+#			local isdescription = description and format(description):gsub('[\2\3]', ''):find('%S') ~= nil
 #
 # 			local returnline = "";
 #			-- Show return type if provided
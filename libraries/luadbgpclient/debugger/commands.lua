@@ -210,7 +210,13 @@ function M.breakpoint_update(self, args)
     
     local response = { tag = "response", attr = { command = "breakpoint_update", transaction_id = args.i } }
     bp.state = args.s or bp.state
-    bp.lineno = tonumber(args.n or bp.lineno)
+    local lineno = tonumber(args.n or bp.lineno)
+    if lineno ~= bp.lineno then
+        -- breakpoints are registered by line
+        core.breakpoints.remove(bp.id)
+        bp.lineno = lineno
+        core.breakpoints.insert(bp)
+    end
     bp.hit_value = tonumber(args.h or bp.hit_value)
     bp.hit_condition = args.o or bp.hit_condition
     dbgp.send_xml(self.skt, response)
@@ -47,6 +47,8 @@ end
 
 --- Returns the packet read from socket, or nil followed by an error message on errors.
 function M.read_packet(skt)
+    -- some transports can read a whole packet at once
+    if skt.receive_packet then return skt:receive_packet() end
     local size = {}
     while true do
         local byte, err = skt:receive(1)
@@ -38,6 +38,16 @@ local transportmodule_uri = nil -- set in init function
 -- this is only used for async commands.
 local active_session = nil
 
+-- Line events are expensive, they are only hooked while they are needed: when there are breakpoints, step events or a command
+-- sent by the IDE to handle. Otherwise only call and return events are hooked, with a count event to poll the IDE.
+local line_events_needed = false
+-- number of breakpoints for each line number, whatever their file, to skip lines quickly
+local breakpoint_lines = { }
+-- whether a step event (over, into, out) is registered
+local stepping = false
+-- command received from IDE while program is running, handled at next line event
+local pending_packet = nil
+
 -- tracks all active coroutines and associate an id to them, the table from_id is the id=>coro mapping, the table from_coro is the reverse
 core.active_coroutines = { n = 0, from_id = setmetatable({ }, { __mode = "v" }), from_coro = setmetatable({ }, { __mode = "k" }) }
 
@@ -134,15 +144,23 @@ do
     local step_into = nil        -- session that registered a step_into event, if any
     local sequence = 0 -- used to generate breakpoint IDs
 
+    local function update_line_events()
+        stepping = step_into ~= nil or next(waiting_sessions) ~= nil
+        line_events_needed = stepping or next(breakpoint_lines) ~= nil
+    end
+
     --- Inserts a new breakpoint into registry
     -- @param bp (table) breakpoint data
     -- @param uri (string, optional) Absolute file URI, for line breakpoints
     -- @param line (number, optional) Line where breakpoint stops, for line breakpoints
-    -- @return breakpoint identifier
+    -- @return breakpoint identifier, kept when breakpoint already has one
     function core.breakpoints.insert(bp)
-        local bpid = sequence
-        sequence = bpid + 1
-        bp.id = bpid
+        local bpid = bp.id
+        if not bpid then
+            bpid = sequence
+            sequence = bpid + 1
+            bp.id = bpid
+        end
         -- re-encode the URI to avoid any mismatch (with authority for example)
         local uri = url.parse(bp.filename)
         bp.filename = url.build{ scheme=uri.scheme, authority="", path=platform.normalize(uri.path)}
@@ -160,6 +178,8 @@ do
         end
     
         table.insert(linereg, bp)
+        breakpoint_lines[bp.lineno] = (breakpoint_lines[bp.lineno] or 0) + 1
+        update_line_events()
         
         id_mapping[bpid] = bp
         return bpid
@@ -219,6 +239,10 @@ do
             -- cleanup file_mapping
             if not next(linereg) then file_mapping[bp.filename][bp.lineno] = nil end
             if not next(file_mapping[bp.filename]) then file_mapping[bp.filename] = nil end
+            
+            local count = breakpoint_lines[bp.lineno] - 1
+            breakpoint_lines[bp.lineno] = count > 0 and count or nil
+            update_line_events()
             return true
         end
         return false
@@ -254,6 +278,7 @@ do
         else
             waiting_sessions[thread] = { event, stack_levels[thread] }
         end
+        update_line_events()
     end
 
     --- Returns if an event (step into, over, out) is triggered.
@@ -281,6 +306,7 @@ do
     function core.events.discard()
         waiting_sessions[active_session.coro[1]] = nil
         step_into = nil
+        update_line_events()
     end
 end
 
@@ -381,15 +407,15 @@ local function line_hook(line)
     local info = active_session.coro:getinfo(0, "S")
     local uri = platform.get_uri(info.source)
     if uri and uri ~= debugger_uri and uri ~= transportmodule_uri then -- the debugger does not break if the source is not known
-        do_break = core.breakpoints.at(uri, line) or core.events.does_match()
+        do_break = (breakpoint_lines[line] and core.breakpoints.at(uri, line)) or (stepping and core.events.does_match())
         if do_break then
             core.events.discard()
         end
 
-        -- check for async commands
-        if not do_break then
-            packet = dbgp.read_packet(active_session.skt)
-            if packet then do_break = true end
+        -- handle async commands
+        if not do_break and pending_packet then
+            packet, pending_packet = pending_packet, nil
+            do_break = true
         end
     end
 
@@ -406,16 +432,62 @@ local line_hook_coro = cocreate(function(line)
     end
 end)
 
-local function debugger_hook(event, line)
+-- the IDE is polled for commands every POLL_INTERVAL lines, or count events of POLL_INTERVAL instructions
+local POLL_INTERVAL = 1000
+local poll_countdown = POLL_INTERVAL
+
+--- Reads a command sent by the IDE, if any, to be handled at next line event
+local function read_command()
+    poll_countdown = POLL_INTERVAL
+    if not pending_packet then
+        pending_packet = dbgp.read_packet(active_session.skt)
+    end
+end
+
+--- Returns arguments of debug.sethook currently needed for hooking threads
+local function hook_mask()
+    if line_events_needed or pending_packet then return "crl", 0
+    else return "cr", POLL_INTERVAL end
+end
+
+local debugger_hook
+-- hook mask set on each thread
+local thread_masks = setmetatable({ }, { __mode = "k" })
+
+--- Sets the hook mask currently needed on given thread, if not already done
+-- @param thread thread identifier
+-- @param coro (optional) coroutine to hook, running one by default
+local function update_hook(thread, coro)
+    local mask, count = hook_mask()
+    if thread_masks[thread] ~= mask then
+        thread_masks[thread] = mask
+        if coro then debug.sethook(coro, debugger_hook, mask, count)
+        else debug.sethook(debugger_hook, mask, count) end
+    end
+end
+
+--- Returns whether line must be handled by line_hook: the IDE could break at this line or has sent a command
+local function is_line_relevant(line)
+    poll_countdown = poll_countdown - 1
+    if poll_countdown <= 0 then read_command() end
+    return pending_packet or stepping or breakpoint_lines[line]
+end
+
+debugger_hook = function(event, line)
     local thread = corunning() or "main"
     if event == "call" then
         stack_levels[thread] = stack_levels[thread] + 1
+        update_hook(thread)
     elseif event == "tail call" then
         -- tail calls has no effects on stack handling: it is only used only for step commands but a such even does not
         -- interfere with any of them
     elseif event == "return" or event == "tail return" then
         stack_levels[thread] = stack_levels[thread] - 1
-    else -- line event: check for breakpoint
+        update_hook(thread)
+    elseif event == "count" then
+        read_command()
+        update_hook(thread)
+    elseif is_line_relevant(line) then -- line event: check for breakpoint
         active_session.coro = util.CurrentThread(corunning())
         if active_session.coro[1] == "main" then
             line_hook(line)
@@ -433,6 +505,7 @@ if rawget(_G, "jit") then
         if event == "call" then
             if debug.getinfo(2, "S").what == "C" then return end
             stack_levels[thread] = stack_levels[thread] + 1
+            update_hook(thread)
         elseif event == "return" or event == "tail return" then
             -- Return hooks are not called for tail calls in JIT (but unlike 5.2 there is no way to know whether a call is tail or not).
             -- So the only reliable way to know stack depth is to walk it.
@@ -440,7 +513,11 @@ if rawget(_G, "jit") then
             -- TODO: find the fastest way to call getinfo ('what' parameter)
             while debug.getinfo(depth, "f") do depth = depth + 1 end
             stack_levels[thread] = depth - 2
-        elseif event == "line" then
+            update_hook(thread)
+        elseif event == "count" then
+            read_command()
+            update_hook(thread)
+        elseif event == "line" and is_line_relevant(line) then
             active_session.coro = util.CurrentThread(corunning())
             if active_session.coro[1] == "main" then
                 line_hook(line)
@@ -518,7 +595,7 @@ local function init(host, port, idekey, transport, executionplatform, workingdir
     debugger_loop(sess)
 
     -- set debug hooks
-    debug.sethook(debugger_hook, "rlc")
+    update_hook(thread)
 
     -- install coroutine collecting functions.
     -- TODO: maintain a list of *all* coroutines can be overkill (for example, the ones created by copcall), make a extension point to
@@ -541,8 +618,8 @@ local function init(host, port, idekey, transport, executionplatform, workingdir
             core.active_coroutines.n = core.active_coroutines.n + 1
             core.active_coroutines.from_id[core.active_coroutines.n] = coro
             core.active_coroutines.from_coro[coro] = core.active_coroutines.n
-            debug.sethook(coro, debugger_hook, "rlc")
         end
+        update_hook(coro, coro)
         return resume_handler(coro, coresume(coro, ...))
     end
     
@@ -61,6 +61,7 @@ function dump_pool:new(dump_locales, dump_upvalues, dump_metatables, dump_stacks
         dump_stacks     = dump_stacks and true or false,
         dump_fenv       = dump_fenv and true or false,
         keep_reference  = keep_reference and true or false,
+        pagesize        = false, -- see dump_pool:table
     }, self)
     all_dumps[dump] = true
     return dump
@@ -102,7 +103,11 @@ end
 -- each function takes the value to debug as parameter and returns its 
 -- debugging structure (or an id, for tables), modifying the pool if needed.
 
-function dump_pool:table(value, depth)
+--- When the pool has a pagesize, only fields of the given page (0 based, first one by default) are dumped, other ones
+-- are just counted: the dump of a huge table stays small. The table structure then has the following fields:
+--   count : total number of fields
+--   first : index of the first dumped field
+function dump_pool:table(value, depth, page)
     depth = depth or math.huge
     if depth < 0 then return nil end
     
@@ -113,16 +118,25 @@ function dump_pool:table(value, depth)
         id = self:_register_new(value)
         local t = { type = "table", repr = tostring(value), ref = self.keep_reference and value or nil }
         
+        local from, to = 1, math.huge
+        if self.pagesize then
+            from = (page or 0) * self.pagesize + 1
+            to = from + self.pagesize - 1
+        end
+        
         -- iterate over table values and detect arrays at the same time
         -- next is used to circumvent __pairs metamethod in 5.2
+        -- at depth 0, fields would not be dumped anyway
         local isarray, i = true, 1
         for k,v in next, value, nil do
-          self:_field(t, k, v, depth)
+          if depth == 0 then break end
+          if i >= from and i <= to then self:_field(t, k, v, depth) end
           -- array detection: keys should be accessible by 1..n keys
           isarray = isarray and rawget(value, i) ~= nil
           i = i + 1
         end
         t.array = i > 1 and isarray
+        t.count, t.first = i - 1, from
         -- FIXME: sort fields for arrays ?
         
         -- The registered length refers to # result because if actual element count 
@@ -319,6 +333,7 @@ end
 --TODO BUG ECLIPSE TOOLSLINUX-99 352316 : as a workaround, context is encoded into the fullname property
 function M.make_property(cxt_id, value, name, fullname, depth, pagesize, page, size_limit, safe_name)
     local dump = dump_pool:new(false, false, true, false, true, true)
+    dump.pagesize = pagesize
     
     -- build XML
     local function build_xml(node, name, fullname, page, depth)
@@ -328,7 +343,8 @@ function M.make_property(cxt_id, value, name, fullname, depth, pagesize, page, s
         if node.metatable then specials[#specials + 1] = "metatable" end
         if node.environment then specials[#specials + 1] = "environment" end
         
-        local numchildren = #node + #specials
+        local count, first = node.count or #node, node.first or 1
+        local numchildren = count + #specials
         local attr = { type = node.array and "sequence" or node.type, name=name, fullname=util.rawb64(tostring(cxt_id).."|"..fullname),
                         encoding="base64", children = 0, size=#data }
         if numchildren > 0 then
@@ -341,14 +357,16 @@ function M.make_property(cxt_id, value, name, fullname, depth, pagesize, page, s
         
         if depth > 0 then
             local from, to = page * pagesize + 1, (page + 1) * (pagesize)
-            for i = from, math.min(#node, to) do
-                local key, value = unpack(node[i])
+            for i = from, math.min(count, to) do
+                local field = node[i - first + 1]
+                if not field then break end -- field which has not been dumped
+                local key, value = unpack(field)
                 key = type(key) == "number" and dump.dump[key] or key
                 value = type(value) == "number" and dump.dump[value] or value
                 xmlnode[#xmlnode + 1] = build_xml(value, "[" .. key.repr .. "]", fullname .. "[" .. generate_key(key.ref) .. "]", 0, depth - 1)
             end
-            for i = #node + 1, math.min(to, numchildren) do
-                local special = specials[i - #node]
+            for i = math.max(from, count + 1), math.min(to, numchildren) do
+                local special = specials[i - count]
                 local prop = build_xml(dump.dump[node[special]], special, special .. "[" .. fullname .. "]", 0, depth - 1)
                 prop.attr.type = "special"
                 xmlnode[#xmlnode + 1] = prop
@@ -381,7 +399,9 @@ function M.make_property(cxt_id, value, name, fullname, depth, pagesize, page, s
                       numchildren=value.n, children=value.n > 0 and 1 or 0, size=0, pagesize=pagesize }
         return node
     else
-        local root = dump[type(value)](dump, value, depth + 1)
+        local root
+        if type(value) == "table" then root = dump:table(value, depth + 1, page)
+        else root = dump[type(value)](dump, value, depth + 1) end
         return build_xml(type(root) == "number" and dump.dump[root] or root, name, fullname, page, depth)
     end
 end
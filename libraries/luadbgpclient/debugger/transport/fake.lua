@@ -82,6 +82,15 @@
 -- @function [parent=#socket] receive
 --
 
+--------------------------------------------------------------------------------
+-- Reads a whole DBGp packet from socket (optional).
+-- If defined, it is used instead of reading packets byte per byte.
+-- @param self
+-- @return #string packet without its null terminator on success.
+-- @return nil, error message on failure.
+-- @function [parent=#socket] receive_packet
+--
+
 --------------------------------------------------------------------------------
 -- Send data to server.
 -- @param self
@@ -330,8 +330,15 @@ local function getindentlevel(source, indenttable)
   -- ---------------------------------------------------------------------------
   local walk = require 'metalua.walk'
   local ast = mlc:src_to_ast(source)
+  if #ast == 0 then
+    -- Only comments, they are at top level
+    return setmetatable({}, {__index = function() return 0 end})
+  end
   walker.indenttable = indenttable
   walker.source = source
+  -- Forget lines of previously formatted sources
+  walker.indentation = {}
+  walker.reference = {}
   walk.block(walker, ast)
 
   -- Built depth table
@@ -482,4 +489,119 @@ function M.indentcode(source, delimiter,indenttable, ...)
   return table.concat(indented)
 end
 
+-- Quantity of chunks checked while looking for top-level statements
+local MAXCHECKS = 32
+
+--------------------------------------------------------------------------------
+-- Split source code in lines.
+--
+-- @param #string source code to split
+-- @param #string delimiter line delimiter
+-- @return #list<#string> lines without delimiters
+--------------------------------------------------------------------------------
+local function splitlines(source, delimiter)
+  local lines = {}
+  local start = 1
+  repeat
+    local position = source:find(delimiter, start, true)
+    lines[#lines + 1] = source:sub(start, position and position - 1)
+    start = position and position + delimiter:len()
+  until not position
+  return lines
+end
+
+--------------------------------------------------------------------------------
+-- Indent only top-level statements enclosing given lines.
+--
+-- A top-level statement starts on a line without leading white space, once all
+-- preceding lines form a valid chunk. As enclosing statements are at top level,
+-- indentation starts from zero and lines are indented as when indenting the
+-- whole source. Lua compiler is fast enough to check chunks, only enclosing
+-- statements are parsed with Metalua.
+--
+-- @function [parent=#luaformatter] indentrange
+-- @param source source code to format
+-- @param delimiter line delimiter to use
+-- @param indenttable true if you want to indent in table
+-- @param #number firstline first line to indent, starting at 1
+-- @param #number lastline last line to indent
+-- @param ... tabulation, as for @{#indentcode}
+-- @return #string formatted code of enclosing statements
+-- @return #number first line of enclosing statements
+-- @return #number last line of enclosing statements
+-- @return #nil when source is not valid
+-- @usage indentrange('local var', '\n', true, 1, 1, '\t')
+--------------------------------------------------------------------------------
+function M.indentrange(source, delimiter, indenttable, firstline, lastline, ...)
+
+  -- As when indenting whole source, invalid code is not indented
+  if not loadstring(source, 'CheckingFormatterSource') then
+    return nil
+  end
+  local lines = splitlines(source, delimiter)
+  local function chunk(first, last)
+    return table.concat(lines, delimiter, first, last)
+  end
+  firstline = math.max(1, math.min(firstline, #lines))
+  lastline = math.max(firstline, math.min(lastline, #lines))
+
+  -- Look backward for a top-level statement start, skipping blocks left open
+  -- by preceding lines
+  local checks = 0
+  local regionfirst = 1
+  local line = firstline
+  while line > 1 and checks < MAXCHECKS do
+    local previous = line - 1
+    if lines[line]:find('^%S') then
+      checks = checks + 1
+      local valid, message = loadstring(chunk(1, line - 1), '=range')
+      if valid then
+        regionfirst = line
+        break
+      end
+      local openline = tonumber(message:match('at line (%d+)'))
+      if openline and openline < line then
+        previous = openline
+      end
+    end
+    line = previous
+  end
+
+  -- Look forward for a top-level statement end, skipping block ends left by
+  -- following lines
+  local regionlast = #lines
+  line = lastline
+  while line < #lines and checks < MAXCHECKS do
+    local next = line + 1
+    if lines[line + 1]:find('^%S') then
+      checks = checks + 1
+      local valid, message = loadstring(chunk(line + 1, #lines), '=range')
+      if valid and loadstring(chunk(regionfirst, line)) then
+        regionlast = line
+        break
+      end
+      local errorline = not valid and tonumber(message:match('^range:(%d+):'))
+      if errorline and errorline > 1 then
+        next = line + errorline - 1
+      end
+    end
+    line = next
+  end
+
+  -- A line may start at column zero while continuing previous statement
+  if not loadstring(chunk(regionfirst, regionlast)) then
+    regionfirst, regionlast = 1, #lines
+  end
+
+  -- Statements following other ones start after a delimiter, indentation of
+  -- their lines depends on it
+  if regionfirst == 1 then
+    return M.indentcode(chunk(1, regionlast), delimiter, indenttable, ...),
+      regionfirst, regionlast
+  end
+  local formatted = M.indentcode(delimiter .. chunk(regionfirst, regionlast),
+    delimiter, indenttable, ...)
+  return formatted:sub(delimiter:len() + 1), regionfirst, regionlast
+end
+
 return M
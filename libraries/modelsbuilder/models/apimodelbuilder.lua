@@ -219,6 +219,9 @@ function M.createmoduleapi(ast,modulename)
 	-- Initialise function type naming
 	resetfunctiontypeidgenerator()
 
+	-- Comments of an AST parsed incrementally were handled by previous build
+	handledcomments = {}
+
 	local _file = apimodel._file()
 	
 	local _comment2apiobj = {}
@@ -114,6 +114,8 @@ public class MarkDown {
 
     private int listLevel = 0;
 
+    private final boolean singlePass;
+
     static {
         Map<String, String> escape = new HashMap<String, String>();
         Map<String, String> backslashEscape = new HashMap<String, String>();
@@ -141,6 +143,18 @@ public class MarkDown {
         LINE_BREAK = Pattern.compile(AUTO_NEWLINES ? "\n" : " {2,}\n");
     }
 
+    public MarkDown() {
+        this(false);
+    }
+
+    /**
+     * @param singlePass when true, text using only paragraphs, code spans, emphasis, simple lists and inline links is
+     *                   rendered in a single pass instead of running all regular expressions, with the same output
+     */
+    public MarkDown(boolean singlePass) {
+        this.singlePass = singlePass;
+    }
+
     /**
      * Main function. The order in which other subs are called here is
      * essential. Link and image substitutions need to happen before
@@ -151,6 +165,12 @@ public class MarkDown {
      * @return Markdown converted to (X)HTML (as configured) as a String
      */
     public String transform(String text) {
+        if (singlePass) {
+            String html = SinglePassMarkDown.transform(text);
+            if (html != null)
+                return html;
+        }
+
         // The MarkdownSharp version keeps the maps (dictionaries) around and just
         // clears them on repeated use. This can be bad in Java as repeated use may
         // promote them to PermGen space, which isn't usually what you want so it's
@@ -1344,7 +1364,7 @@ public class MarkDown {
      * @param text Markdown
      * @return Markdown with special characters unescaped
      */
-    private String unescapeSpecialChars(String text) {
+    static String unescapeSpecialChars(String text) {
         for (Map.Entry<String, String> entry : ESCAPE_TABLE.entrySet()) {
             text = text.replace(entry.getValue(), entry.getKey());
         }
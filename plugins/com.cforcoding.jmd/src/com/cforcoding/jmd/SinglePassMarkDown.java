@@ -0,0 +1,402 @@
+package com.cforcoding.jmd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Single pass renderer for the Markdown subset most documentation is written in: paragraphs, code spans, emphasis,
+ * simple lists and inline links.</p>
+ *
+ * <p>Output is the same as {@link MarkDown#transform(String)}. When text uses anything else, or a construct whose
+ * rendering by the regular expressions would be ambiguous, {@link #transform(String)} gives up and returns
+ * <code>null</code>.</p>
+ */
+final class SinglePassMarkDown {
+    /**
+     * Stand for <code>*</code> and <code>_</code> in code spans and URLs, so that they are not taken for emphasis
+     */
+    private static final char STAR = '\uE000';
+    private static final char UNDERSCORE = '\uE001';
+
+    private static final char UNORDERED = '*';
+    private static final char ORDERED = '1';
+    private static final char INDENTED = ' ';
+
+    private static final String CODE_ESCAPED = "*_{}[]\\";
+
+    private SinglePassMarkDown() {
+    }
+
+    /**
+     * @param text Markdown
+     * @return (X)HTML, <code>null</code> when text is not in supported subset
+     */
+    static String transform(String text) {
+        text = text.replace("\r\n", "\n");
+        text = text.replace("\r", "\n");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\t' || c == '\\' || c == STAR || c == UNDERSCORE)
+                return null;
+        }
+
+        // Group lines in blocks separated by blank lines
+        List<List<String>> blocks = new ArrayList<List<String>>();
+        List<String> block = null;
+        for (String line : text.split("\n", -1)) {
+            if (isBlank(line)) {
+                block = null;
+            } else {
+                if (block == null) {
+                    block = new ArrayList<String>();
+                    blocks.add(block);
+                }
+                block.add(line);
+            }
+        }
+        if (blocks.isEmpty())
+            return "<p></p>\n";
+
+        StringBuilder html = new StringBuilder();
+        boolean previousIsList = false;
+        for (List<String> lines : blocks) {
+            for (String line : lines) {
+                if (!isParagraphLine(line))
+                    return null;
+            }
+            // Code block
+            if (lines.get(0).startsWith("    "))
+                return null;
+
+            String rendered;
+            char marker = listMarker(lines.get(0));
+            if (marker != 0) {
+                // A list goes on after blank lines until a line which does not start with a non space character
+                if (previousIsList)
+                    return null;
+                rendered = renderList(lines, marker);
+                previousIsList = true;
+            } else {
+                if (previousIsList && lines.get(0).startsWith(" "))
+                    return null;
+                rendered = renderParagraph(lines);
+                previousIsList = false;
+            }
+            if (rendered == null)
+                return null;
+            if (html.length() > 0)
+                html.append("\n\n");
+            html.append(rendered);
+        }
+        return MarkDown.unescapeSpecialChars(html.toString()) + "\n";
+    }
+
+    private static boolean isBlank(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) != ' ')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false for lines which may be headers, rules or quotes
+     */
+    private static boolean isParagraphLine(String line) {
+        String trimmed = line.trim();
+        if (trimmed.startsWith("#") || trimmed.startsWith(">"))
+            return false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            if ("*-_= ".indexOf(trimmed.charAt(i)) < 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return {@link #UNORDERED} or {@link #ORDERED} for list items, {@link #INDENTED} for indented ones, else way 0
+     */
+    private static char listMarker(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) == ' ')
+            i++;
+        int indentation = i;
+        if (i == line.length())
+            return 0;
+        char marker;
+        char c = line.charAt(i);
+        if (c == '*' || c == '+' || c == '-') {
+            marker = UNORDERED;
+            i++;
+        } else if (isAsciiDigit(c)) {
+            while (i < line.length() && isAsciiDigit(line.charAt(i)))
+                i++;
+            if (i == line.length() || line.charAt(i) != '.')
+                return 0;
+            marker = ORDERED;
+            i++;
+        } else {
+            return 0;
+        }
+        if (i == line.length() || line.charAt(i) != ' ')
+            return 0;
+        return indentation > 0 ? INDENTED : marker;
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static String renderList(List<String> lines, char marker) {
+        if (marker == INDENTED)
+            return null;
+        StringBuilder html = new StringBuilder(marker == UNORDERED ? "<ul>\n" : "<ol>\n");
+        for (String line : lines) {
+            // Lines of a list item, or items at other indentations, are not supported
+            char lineMarker = listMarker(line);
+            if (lineMarker != UNORDERED && lineMarker != ORDERED)
+                return null;
+            int start = lineMarker == UNORDERED ? 1 : line.indexOf('.') + 1;
+            while (start < line.length() && line.charAt(start) == ' ')
+                start++;
+            String item = line.substring(start);
+            // Empty item or sub-list
+            if (item.length() == 0 || listMarker(item) != 0)
+                return null;
+            String span = renderSpan(item);
+            if (span == null)
+                return null;
+            html.append("<li>").append(span).append("</li>\n");
+        }
+        html.append(marker == UNORDERED ? "</ul>" : "</ol>");
+        return html.toString();
+    }
+
+    private static String renderParagraph(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            if (text.length() > 0)
+                text.append('\n');
+            text.append(line);
+        }
+        String span = renderSpan(text.toString());
+        if (span == null)
+            return null;
+        int start = 0;
+        while (start < span.length() && span.charAt(start) == ' ')
+            start++;
+        return "<p>" + span.substring(start) + "</p>";
+    }
+
+    /**
+     * Renders code spans and links in a single pass, then emphasis and line breaks.
+     */
+    private static String renderSpan(String text) {
+        StringBuilder html = new StringBuilder(text.length() + 16);
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '`') {
+                int end = renderCode(text, i, html);
+                if (end < 0)
+                    return null;
+                i = end;
+            } else if (c == '[') {
+                int end = renderLink(text, i, html);
+                if (end < 0)
+                    return null;
+                i = end;
+            } else if (c == '<' || c == '&' || (c == '!' && i + 1 < text.length() && text.charAt(i + 1) == '[')) {
+                return null;
+            } else {
+                html.append(c);
+                i++;
+            }
+        }
+        String result = emphasis(html.toString(), true);
+        result = emphasis(result, false);
+        return lineBreaks(result).replace(STAR, '*').replace(UNDERSCORE, '_');
+    }
+
+    /**
+     * @return index following code span, -1 when it is not a simple one
+     */
+    private static int renderCode(String text, int start, StringBuilder html) {
+        int end = text.indexOf('`', start + 1);
+        if (end < 0 || end == start + 1 || (end + 1 < text.length() && text.charAt(end + 1) == '`'))
+            return -1;
+        String code = text.substring(start + 1, end);
+        boolean digits = false;
+        boolean escaped = false;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == '\n')
+                return -1;
+            // Would be taken for HTML before code spans are rendered
+            if (c == '<' && i + 1 < code.length() && "/!?$".indexOf(code.charAt(i + 1)) >= 0
+                    || c == '<' && i + 1 < code.length() && Character.isLetter(code.charAt(i + 1)))
+                return -1;
+            digits |= isAsciiDigit(c);
+            escaped |= CODE_ESCAPED.indexOf(c) >= 0;
+        }
+        // Escaped characters are replaced by their code, which could merge with digits
+        if (digits && escaped)
+            return -1;
+
+        int first = 0;
+        while (first < code.length() && code.charAt(first) == ' ')
+            first++;
+        int last = code.length();
+        while (last > first && code.charAt(last - 1) == ' ')
+            last--;
+        html.append("<code>");
+        for (int i = first; i < last; i++) {
+            char c = code.charAt(i);
+            if (c == '&')
+                html.append("&amp;");
+            else if (c == '<')
+                html.append("&lt;");
+            else if (c == '>')
+                html.append("&gt;");
+            else if (c == '*')
+                html.append(STAR);
+            else if (c == '_')
+                html.append(UNDERSCORE);
+            else
+                html.append(c);
+        }
+        html.append("</code>");
+        return end + 1;
+    }
+
+    /**
+     * Renders <code>[text](url)</code>, text may contain code spans.
+     *
+     * @return index following link, -1 when it is not a simple one
+     */
+    private static int renderLink(String text, int start, StringBuilder html) {
+        StringBuilder linkText = new StringBuilder();
+        int i = start + 1;
+        while (i < text.length() && text.charAt(i) != ']') {
+            char c = text.charAt(i);
+            if (c == '[' || c == '\n' || c == '<' || c == '&')
+                return -1;
+            if (c == '`') {
+                i = renderCode(text, i, linkText);
+                if (i < 0)
+                    return -1;
+            } else {
+                linkText.append(c);
+                i++;
+            }
+        }
+        if (i + 1 >= text.length() || text.charAt(i + 1) != '(')
+            return -1;
+        int urlStart = i + 2;
+        int urlEnd = urlStart;
+        boolean digits = false;
+        boolean escaped = false;
+        while (urlEnd < text.length() && text.charAt(urlEnd) != ')') {
+            char c = text.charAt(urlEnd);
+            if (Character.isWhitespace(c) || "()<>'\"[]`".indexOf(c) >= 0)
+                return -1;
+            digits |= isAsciiDigit(c);
+            escaped |= c == '*' || c == '_';
+            urlEnd++;
+        }
+        if (urlEnd == urlStart || urlEnd == text.length() || (digits && escaped))
+            return -1;
+
+        html.append("<a href=\"");
+        html.append(text.substring(urlStart, urlEnd).replace('*', STAR).replace('_', UNDERSCORE));
+        html.append("\">");
+        html.append(linkText);
+        html.append("</a>");
+        return urlEnd + 1;
+    }
+
+    /**
+     * Same matches as <code>(\*\*|__)(?=\S)(.+?[*_]*)(?&lt;=\S)\1</code> for strong emphasis, else way
+     * <code>(\*|_)(?=\S)(.+?)(?&lt;=\S)\1</code>.
+     */
+    private static String emphasis(String text, boolean strong) {
+        int length = strong ? 2 : 1;
+        String tag = strong ? "strong" : "em";
+        StringBuilder result = new StringBuilder(text.length());
+        int copied = 0;
+        int i = 0;
+        while (i + length < text.length()) {
+            char delimiter = text.charAt(i);
+            if ((delimiter != '*' && delimiter != '_') || (strong && text.charAt(i + 1) != delimiter)
+                    || isSpace(text.charAt(i + length))) {
+                i++;
+                continue;
+            }
+            int end = strong ? strongEnd(text, i + 2, delimiter) : emphasisEnd(text, i + 1, delimiter);
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            result.append(text, copied, i);
+            result.append('<').append(tag).append('>');
+            result.append(text, i + length, end);
+            result.append("</").append(tag).append('>');
+            i = end + length;
+            copied = i;
+        }
+        result.append(text, copied, text.length());
+        return result.toString();
+    }
+
+    /**
+     * @return end of emphasized text starting at given index, -1 when there is none
+     */
+    private static int emphasisEnd(String text, int start, char delimiter) {
+        for (int end = start + 1; end < text.length(); end++) {
+            if (text.charAt(end) == delimiter && !isSpace(text.charAt(end - 1)))
+                return end;
+        }
+        return -1;
+    }
+
+    /**
+     * Lazy text followed by a greedy run of delimiter characters, which is given back one by one on failure.
+     */
+    private static int strongEnd(String text, int start, char delimiter) {
+        for (int lazy = start + 1; lazy < text.length(); lazy++) {
+            int run = lazy;
+            while (run < text.length() && (text.charAt(run) == '*' || text.charAt(run) == '_'))
+                run++;
+            for (int end = run; end >= lazy; end--) {
+                if (!isSpace(text.charAt(end - 1)) && end + 1 < text.length() && text.charAt(end) == delimiter
+                        && text.charAt(end + 1) == delimiter)
+                    return end;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Replaces two or more spaces before a new line with a break.
+     */
+    private static String lineBreaks(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        int copied = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            int spaces = i;
+            while (spaces > copied && text.charAt(spaces - 1) == ' ')
+                spaces--;
+            if (i - spaces >= 2) {
+                result.append(text, copied, spaces);
+                result.append("<br" + MarkDown.EMPTY_ELEMENT_SUFFIX);
+                copied = i + 1;
+            }
+        }
+        result.append(text, copied, text.length());
+        return result.toString();
+    }
+}
@@ -176,6 +176,12 @@ public class LuaState {
 	 */
 	private ReferenceQueue<LuaValueProxyImpl> proxyQueue = new ReferenceQueue<LuaValueProxyImpl>();
 
+	/**
+	 * Thread owning this Lua state, or <code>null</code> when any thread may
+	 * use it.
+	 */
+	private Thread owner;
+
 	// -- Construction
 	/**
 	 * Creates a new instance. The class loader of this Lua state is set to the
@@ -353,6 +359,50 @@ public class LuaState {
 		this.converter = converter;
 	}
 
+	/**
+	 * Returns the thread owning this Lua state.
+	 * 
+	 * <p>
+	 * The method may be invoked on a closed Lua state.
+	 * </p>
+	 * 
+	 * @return the owner thread, or <code>null</code> if any thread may use this
+	 *         Lua state
+	 * @see #setOwner(Thread)
+	 */
+	public synchronized Thread getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Binds this Lua state to a single owner thread, or releases it with
+	 * <code>null</code>.
+	 * 
+	 * <p>
+	 * While a Lua state is owned, it may only be used by its owner thread,
+	 * other threads get an <code>IllegalStateException</code>. Lua values
+	 * referenced by collected proxies are then released on {@link #call(int, int)}
+	 * and {@link #gc(GcAction, int)} only, instead of on each method call. The
+	 * owner is checked by reference, and the monitor of an owned state is never
+	 * contended, so accessors are cheap. A Lua state may change owner, when it
+	 * is handed from a thread to an other by a pool for instance.
+	 * </p>
+	 * 
+	 * <p>
+	 * The method may be invoked on a closed Lua state.
+	 * </p>
+	 * 
+	 * @param owner
+	 *            the owner thread, or <code>null</code> to let any thread use
+	 *            this Lua state
+	 */
+	public synchronized void setOwner(Thread owner) {
+		if (isOpenInternal()) {
+			cleanupProxies();
+		}
+		this.owner = owner;
+	}
+
 	/**
 	 * Returns whether this Lua state is open.
 	 * 
@@ -392,6 +442,9 @@ public class LuaState {
 	 */
 	public synchronized int gc(GcAction what, int data) {
 		check();
+		if (owner != null) {
+			cleanupProxies();
+		}
 		return lua_gc(what.ordinal(), data);
 	}
 
@@ -552,6 +605,9 @@ public class LuaState {
 	 */
 	public synchronized void call(int argCount, int returnCount) {
 		check();
+		if (owner != null) {
+			cleanupProxies();
+		}
 		lua_pcall(argCount, returnCount);
 	}
 
@@ -1999,7 +2055,22 @@ public class LuaState {
 			throw new IllegalStateException("Lua state is closed");
 		}
 
-		// Check proxy queue
+		// Check owner, proxies of an owned state are cleaned up in batch
+		if (owner != null) {
+			if (owner != Thread.currentThread()) {
+				throw new IllegalStateException(
+						"Lua state is owned by another thread");
+			}
+			return;
+		}
+
+		cleanupProxies();
+	}
+
+	/**
+	 * Releases Lua values referenced by collected proxies.
+	 */
+	private void cleanupProxies() {
 		LuaValueProxyRef luaValueProxyRef;
 		while ((luaValueProxyRef = (LuaValueProxyRef) proxyQueue.poll()) != null) {
 			proxySet.remove(luaValueProxyRef);
@@ -54,15 +54,21 @@ public abstract class AbstractLuaModule {
 		LuaState luaState = createLuaState();
 		definePaths(luaState);
 
-		// load module
-		luaState.getGlobal("require"); //$NON-NLS-1$
-		luaState.pushString(getModuleName());
-		luaState.call(1, 1);
+		// load module, from chunks loaded by the first state of this module when possible
+		LuaStateFactory.getDefault().require(luaState, getTemplateKey(), getModuleName());
 		luaState.setGlobal(getModuleName());
 
 		return luaState;
 	}
 
+	/**
+	 * @return identifier of states set up as this module ones, they share chunks loaded to require it
+	 * @see LuaStateFactory
+	 */
+	protected String getTemplateKey() {
+		return getClass().getName() + '/' + getModuleName() + '/' + getLuaSourcePaths() + '/' + getLuacSourcePaths();
+	}
+
 	protected void pushLuaModule(LuaState luaState) {
 		luaState.getGlobal(getModuleName());
 	}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package com.naef.jnlua.eclipse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.osgi.util.NLS;
+
+import com.naef.jnlua.LuaException;
+import com.naef.jnlua.LuaState;
+
+/**
+ * Requires Lua modules in new states from a snapshot of the chunks loaded by a first state, the template.
+ *
+ * A {@link LuaState} can not be copied. Instead, while the template requires a module, every chunk found by <code>package.loaders</code> is dumped.
+ * Next states of the same template get those chunks in <code>package.preload</code>: requiring the module runs them again without looking for
+ * sources, reading them or compiling them. Chunks which can not be dumped, C functions or functions with upvalues, are loaded as usual.
+ */
+public final class LuaStateFactory {
+
+	private static final LuaStateFactory DEFAULT = new LuaStateFactory();
+
+	/**
+	 * Requires given module, dumping chunks found by loaders as hexadecimal strings. Strings given to Java must be valid UTF-8 and
+	 * {@link LuaState#dump(java.io.OutputStream)} fails for functions bigger than its buffer. Loaders added while requiring, as the Metalua one, are
+	 * recorded too.
+	 */
+	private static final String RECORDING_REQUIRE = "local name = ...\n" //$NON-NLS-1$
+			+ "local loaders, preload = package.loaders, package.loaders[1]\n" //$NON-NLS-1$
+			+ "local originals, recorded = {}, {}\n" //$NON-NLS-1$
+			+ "local function hex(c) return string.format('%02x', c:byte()) end\n" //$NON-NLS-1$
+			+ "local wrapall\n" //$NON-NLS-1$
+			+ "local function wrap(loader)\n" //$NON-NLS-1$
+			+ "  local wrapper = function(modulename)\n" //$NON-NLS-1$
+			+ "    wrapall()\n" //$NON-NLS-1$
+			+ "    local chunk = loader(modulename)\n" //$NON-NLS-1$
+			+ "    if type(chunk) == 'function' and debug.getinfo(chunk, 'S').what == 'main' and debug.getinfo(chunk, 'u').nups == 0 then\n" //$NON-NLS-1$
+			+ "      recorded[modulename] = (string.dump(chunk):gsub('.', hex))\n" //$NON-NLS-1$
+			+ "    end\n" //$NON-NLS-1$
+			+ "    return chunk\n" //$NON-NLS-1$
+			+ "  end\n" //$NON-NLS-1$
+			+ "  originals[wrapper] = loader\n" //$NON-NLS-1$
+			+ "  return wrapper\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "function wrapall()\n" //$NON-NLS-1$
+			+ "  for i, loader in ipairs(loaders) do\n" //$NON-NLS-1$
+			+ "    if loader ~= preload and not originals[loader] then loaders[i] = wrap(loader) end\n" //$NON-NLS-1$
+			+ "  end\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "wrapall()\n" //$NON-NLS-1$
+			+ "local ok, module = pcall(require, name)\n" //$NON-NLS-1$
+			+ "for i, loader in ipairs(loaders) do loaders[i] = originals[loader] or loader end\n" //$NON-NLS-1$
+			+ "if not ok then error(module, 0) end\n" //$NON-NLS-1$
+			+ "return module, recorded"; //$NON-NLS-1$
+
+	/** Chunks recorded by template, by module name */
+	private final Map<String, Map<String, byte[]>> snapshots = new HashMap<String, Map<String, byte[]>>();
+
+	private LuaStateFactory() {
+	}
+
+	public static LuaStateFactory getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Requires a module in given state and leaves it on top of the stack.
+	 *
+	 * The first state of a template records the chunks it loads, next ones load them from this snapshot. States of a template must have the same
+	 * paths and require the same module.
+	 *
+	 * @param template
+	 *            identifies states set up the same way
+	 */
+	public void require(final LuaState state, final String template, final String moduleName) {
+		final Map<String, byte[]> snapshot;
+		synchronized (snapshots) {
+			snapshot = snapshots.get(template);
+		}
+		if (snapshot != null && preload(state, template, snapshot)) {
+			state.getGlobal("require"); //$NON-NLS-1$
+			state.pushString(moduleName);
+			state.call(1, 1);
+			return;
+		}
+
+		// This state is the template
+		state.load(RECORDING_REQUIRE, "recordingRequire"); //$NON-NLS-1$
+		state.pushString(moduleName);
+		state.call(1, 2);
+		final Map<String, byte[]> recorded = new HashMap<String, byte[]>();
+		state.pushNil();
+		while (state.next(-2)) {
+			recorded.put(state.toString(-2), fromHex(state.toString(-1)));
+			state.pop(1);
+		}
+		state.pop(1);
+		synchronized (snapshots) {
+			snapshots.put(template, recorded);
+		}
+	}
+
+	/**
+	 * Drops all snapshots, next state of each template will record its chunks again.
+	 */
+	public void clear() {
+		synchronized (snapshots) {
+			snapshots.clear();
+		}
+	}
+
+	/**
+	 * Registers snapshot chunks in <code>package.preload</code>, unless a module is already preloaded.
+	 *
+	 * @return false when a chunk was rejected, no chunk is then preloaded and snapshot is dropped
+	 */
+	private boolean preload(final LuaState state, final String template, final Map<String, byte[]> snapshot) {
+		final int top = state.getTop();
+		state.getGlobal("package"); //$NON-NLS-1$
+		state.getField(-1, "preload"); //$NON-NLS-1$
+		final Map<String, byte[]> preloaded = new HashMap<String, byte[]>();
+		try {
+			for (final Entry<String, byte[]> chunk : snapshot.entrySet()) {
+				state.getField(-1, chunk.getKey());
+				final boolean alreadyPreloaded = !state.isNil(-1);
+				state.pop(1);
+				if (!alreadyPreloaded) {
+					state.load(new ByteArrayInputStream(chunk.getValue()), chunk.getKey());
+					state.setField(-2, chunk.getKey());
+					preloaded.put(chunk.getKey(), chunk.getValue());
+				}
+			}
+			return true;
+		} catch (final IOException e) {
+			// Can not happen with an array
+			throw new IllegalStateException(e);
+		} catch (final LuaException e) {
+			state.setTop(top + 2);
+			for (final String name : preloaded.keySet()) {
+				state.pushNil();
+				state.setField(-2, name);
+			}
+			synchronized (snapshots) {
+				if (snapshots.get(template) == snapshot)
+					snapshots.remove(template);
+			}
+			AbstractLuaModule.log(IStatus.WARNING, NLS.bind("Unable to load chunks of {0}, they will be loaded from sources.", template), e); //$NON-NLS-1$
+			return false;
+		} finally {
+			state.setTop(top);
+		}
+	}
+
+	private static byte[] fromHex(final String hex) {
+		final byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+}
@@ -72,6 +72,21 @@ function socket:receive (number)
 	end
 end
 
+--------------------------------------------------------------------------------
+-- Reads a whole DBGp packet from socket, with a single call to Java.
+-- @function [parent=#socket] receive_packet
+-- @param self
+-- @return #string packet without its null terminator on success.
+-- @return nil, error message on failure.
+function socket:receive_packet ()
+	local status, res = pcall(function() return self.wrapper:receivePacket() end)
+	if status then
+		return res
+	else
+		return nil, res
+	end
+end
+
 --------------------------------------------------------------------------------
 -- Send data to server.
 -- @function [parent=#socket] send
@@ -85,6 +100,7 @@ function socket:send (buffer)
 			self.wrapper:send(data)
 			self.wrapper:send("")
 		end)
+		self.wrapper:flush()
 	end)
 end
 
@@ -82,6 +82,13 @@ public class LuaCoroutine extends ScriptThread {
 		return stack.getFrames();
 	}
 
+	/**
+	 * Forgets stack frames after a new suspension, they are read again only when requested.
+	 */
+	public void resetStack() {
+		stack.reset();
+	}
+
 	/**
 	 * @see org.eclipse.dltk.internal.debug.core.model.ScriptThread#updateStackFrames()
 	 */
@@ -104,12 +104,20 @@ public class LuaCoroutineStack implements IScriptStack {
 
 	public void updateFrames() {
 		synchronized (framesLock) {
+			if (frames == null)
+				return;
 			for (int i = 0; i < frames.length; i++) {
 				((ScriptStackFrame) frames[i]).updateVariables();
 			}
 		}
 	}
 
+	public void reset() {
+		synchronized (framesLock) {
+			frames = null;
+		}
+	}
+
 	public boolean isInitialized() {
 		synchronized (framesLock) {
 			return frames != null;
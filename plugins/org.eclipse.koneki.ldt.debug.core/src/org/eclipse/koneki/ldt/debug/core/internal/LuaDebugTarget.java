@@ -13,7 +13,10 @@ package org.eclipse.koneki.ldt.debug.core.internal;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.runtime.CoreException;
@@ -43,42 +46,52 @@ public class LuaDebugTarget extends ScriptDebugTarget {
 		ADD, UPDATE, REMOVE;
 	}
 
-	private List<LuaCoroutine> coroutines = new ArrayList<LuaCoroutine>();
+	/** Coroutines of last suspension, by ID */
+	private volatile Map<String, LuaCoroutine> coroutines = Collections.emptyMap();
 
-	public LuaDebugTarget(String modelId, IDbgpService dbgpService, String sessionId, ILaunch launch, IProcess process) {
-		super(modelId, dbgpService, sessionId, launch, process);
-		DebugPlugin.getDefault().addDebugEventListener(new IDebugEventSetListener() {
+	/** Thread which suspended last */
+	private volatile IScriptThread suspendedThread;
 
-			protected List<LuaCoroutine> parseCoroutineList(Element response) throws DbgpException, CoreException {
-				NodeList xmlNodes = response.getElementsByTagName("coroutine"); //$NON-NLS-1$
-				// TODO recycle LuaCoroutine instances to avoid flickering (may also require to modify stack)
-				List<LuaCoroutine> coroList = new ArrayList<LuaCoroutine>(xmlNodes.getLength());
-				for (int i = 0; i < xmlNodes.getLength(); i++) {
-					Element coro = (Element) xmlNodes.item(i);
-					if (coro.getAttribute("running").equals("0")) { //$NON-NLS-1$ //$NON-NLS-2$
-						coroList.add(new LuaCoroutine(LuaDebugTarget.this, coro.getAttribute("id"), coro.getAttribute("name"))); //$NON-NLS-1$ //$NON-NLS-2$
-					}
-				}
-				return coroList;
+	/**
+	 * Fetches coroutine list outside of debug events dispatch, the debug view is notified once it is up to date.
+	 */
+	private final Job coroutineListJob = new Job(Messages.LuaDebugTargetCoroutineList) {
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			IScriptThread thread = suspendedThread;
+			// coroutine list can not be requested while running
+			if (thread == null || !thread.isSuspended())
+				return Status.OK_STATUS;
+
+			DbgpRequest listRequest = DbgpBaseCommands.createRequest("coroutine_list"); //$NON-NLS-1$
+			try {
+				Element response = thread.getDbgpSession().getCommunicator().communicate(listRequest);
+				coroutines = parseCoroutineList(response);
+			} catch (DbgpException e) {
+				Activator.logError(Messages.LuaDebugTarget_error_coro_list, e);
+				coroutines = Collections.emptyMap();
+			} catch (CoreException e) {
+				Activator.logError(Messages.LuaDebugTarget_error_coro_list, e);
+				coroutines = Collections.emptyMap();
 			}
+			DebugPlugin.getDefault().fireDebugEventSet(new DebugEvent[] { new DebugEvent(LuaDebugTarget.this, DebugEvent.CHANGE, DebugEvent.CONTENT) });
+			return Status.OK_STATUS;
+		}
+	};
 
+	public LuaDebugTarget(String modelId, IDbgpService dbgpService, String sessionId, ILaunch launch, IProcess process) {
+		super(modelId, dbgpService, sessionId, launch, process);
+		coroutineListJob.setSystem(true);
+		DebugPlugin.getDefault().addDebugEventListener(new IDebugEventSetListener() {
 			@Override
 			public void handleDebugEvents(DebugEvent[] events) {
 				for (DebugEvent event : events) {
-					if (event.getKind() == DebugEvent.SUSPEND) {
-						IScriptThread thread = (IScriptThread) event.getSource();
-						DbgpRequest listRequest = DbgpBaseCommands.createRequest("coroutine_list"); //$NON-NLS-1$
-						try {
-							Element response = thread.getDbgpSession().getCommunicator().communicate(listRequest);
-							LuaDebugTarget.this.coroutines = parseCoroutineList(response);
-						} catch (DbgpException e) {
-							Activator.logError(Messages.LuaDebugTarget_error_coro_list, e);
-							LuaDebugTarget.this.coroutines.clear();
-						} catch (CoreException e) {
-							Activator.logError(Messages.LuaDebugTarget_error_coro_list, e);
-							LuaDebugTarget.this.coroutines.clear();
-						}
-					} else if (event.getKind() == DebugEvent.TERMINATE) {
+					Object source = event.getSource();
+					if (event.getKind() == DebugEvent.SUSPEND && source instanceof IScriptThread && !(source instanceof LuaCoroutine)
+							&& ((IScriptThread) source).getDebugTarget() == LuaDebugTarget.this) {
+						suspendedThread = (IScriptThread) source;
+						coroutineListJob.schedule();
+					} else if (event.getKind() == DebugEvent.TERMINATE && source == LuaDebugTarget.this) {
 						DebugPlugin.getDefault().removeDebugEventListener(this);
 					}
 				}
@@ -87,6 +100,29 @@ public class LuaDebugTarget extends ScriptDebugTarget {
 
 	}
 
+	/**
+	 * Coroutines already known are kept, with their stack reset, so debug view does not rebuild them.
+	 */
+	protected Map<String, LuaCoroutine> parseCoroutineList(Element response) throws DbgpException, CoreException {
+		NodeList xmlNodes = response.getElementsByTagName("coroutine"); //$NON-NLS-1$
+		Map<String, LuaCoroutine> previous = coroutines;
+		Map<String, LuaCoroutine> coroMap = new LinkedHashMap<String, LuaCoroutine>(xmlNodes.getLength());
+		for (int i = 0; i < xmlNodes.getLength(); i++) {
+			Element coro = (Element) xmlNodes.item(i);
+			if (coro.getAttribute("running").equals("0")) { //$NON-NLS-1$ //$NON-NLS-2$
+				String id = coro.getAttribute("id"); //$NON-NLS-1$
+				LuaCoroutine coroutine = previous.get(id);
+				if (coroutine != null && coroutine.getName().equals(coro.getAttribute("name"))) { //$NON-NLS-1$
+					coroutine.resetStack();
+				} else {
+					coroutine = new LuaCoroutine(this, id, coro.getAttribute("name")); //$NON-NLS-1$
+				}
+				coroMap.put(id, coroutine);
+			}
+		}
+		return coroMap;
+	}
+
 	/**
 	 * Just a job performing operations on {@link IBreakpoint}.
 	 */
@@ -195,7 +231,7 @@ public class LuaDebugTarget extends ScriptDebugTarget {
 		threads.addAll(Arrays.asList(super.getThreads()));
 		// coroutines are shown only when main thread is suspended (while thread is running, it is pointless to show them)
 		if (threads.size() > 0 && threads.get(0).isSuspended()) {
-			threads.addAll(coroutines);
+			threads.addAll(coroutines.values());
 		}
 		return threads.toArray(new IThread[threads.size()]);
 	}
@@ -17,6 +17,7 @@ public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.koneki.ldt.debug.core.internal.messages"; //$NON-NLS-1$
 	public static String LuaDebugTarget_error_coro_list;
 	public static String LuaDebugTargetAdd;
+	public static String LuaDebugTargetCoroutineList;
 	public static String LuaDebugTargetRemove;
 	public static String LuaDebugTargetUpdate;
 	static {
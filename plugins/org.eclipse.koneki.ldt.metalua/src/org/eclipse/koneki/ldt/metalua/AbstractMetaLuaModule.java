@@ -13,11 +13,15 @@ package org.eclipse.koneki.ldt.metalua;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.eclipse.koneki.ldt.metalua.internal.MetaluaBundle;
 import org.eclipse.koneki.ldt.metalua.internal.MetaluaStateFactory;
 import org.eclipse.osgi.util.NLS;
 
+import com.naef.jnlua.LuaException;
 import com.naef.jnlua.LuaState;
 import com.naef.jnlua.eclipse.AbstractLuaModule;
 
@@ -28,19 +32,63 @@ public abstract class AbstractMetaLuaModule extends AbstractLuaModule {
 
 	private static final String METALUA_PATTERN = "?.mlua;"; //$NON-NLS-1$
 
-	@Override
-	protected LuaState loadLuaModule() {
-		compileMetaluaFiles();
-		return super.loadLuaModule();
-	}
+	/** Bytecode of Metalua files to compile, by file path, compiled once for all modules */
+	private static final Map<String, CompiledFile> COMPILED_FILES = new HashMap<String, CompiledFile>();
 
 	@Override
 	protected void definePaths(final LuaState state) {
 		super.definePaths(state);
 		final List<File> metaluaSourceFolders = getScriptFolders(getMetaLuaSourcePaths());
 		setMetaluaPath(state, metaluaSourceFolders);
+		preloadMetaluaFiles(state, metaluaSourceFolders);
+	}
+
+	/**
+	 * Registers Metalua files to compile in <code>package.preload</code>, instead of writing their bytecode next to them.
+	 */
+	private void preloadMetaluaFiles(final LuaState state, final List<File> metaluaSourceFolders) {
+		final List<String> metaLuaFileToCompile = getMetaLuaFileToCompile();
+		if (metaLuaFileToCompile == null)
+			return;
+
+		final Map<String, byte[]> modules = new HashMap<String, byte[]>();
+		for (final String filename : metaLuaFileToCompile) {
+			// As for require, first folder of path wins
+			for (final File folder : metaluaSourceFolders) {
+				final File file = new File(folder, filename);
+				if (file.isFile()) {
+					try {
+						final String moduleName = filename.substring(0, filename.lastIndexOf('.')).replace('/', '.');
+						modules.put(moduleName, getBytecode(state, file, filename));
+					} catch (final LuaException e) {
+						Activator.logWarning(NLS.bind("Unable to compile {0}.", filename), e); //$NON-NLS-1$
+					}
+					break;
+				}
+			}
+		}
+		MetaluaBundle.preload(state, modules);
+	}
+
+	private static byte[] getBytecode(final LuaState state, final File file, final String filename) {
+		final String key = file.getPath();
+		synchronized (COMPILED_FILES) {
+			final CompiledFile compiled = COMPILED_FILES.get(key);
+			if (compiled != null && compiled.lastModified == file.lastModified())
+				return compiled.bytecode;
+		}
+		final long lastModified = file.lastModified();
+		final byte[] bytecode = MetaluaBundle.compile(state, file, '@' + filename);
+		synchronized (COMPILED_FILES) {
+			COMPILED_FILES.put(key, new CompiledFile(lastModified, bytecode));
+		}
+		return bytecode;
 	}
 
+	/**
+	 * @deprecated Metalua files to compile are now compiled in memory when the module is loaded, see {@link #definePaths(LuaState)}.
+	 */
+	@Deprecated
 	public void compileMetaluaFiles() {
 		final LuaState newLuaState = MetaluaStateFactory.newLuaState();
 
@@ -66,6 +114,10 @@ public abstract class AbstractMetaLuaModule extends AbstractLuaModule {
 		newLuaState.close();
 	}
 
+	/**
+	 * @deprecated Metalua files to compile are now compiled in memory when the module is loaded, see {@link #definePaths(LuaState)}.
+	 */
+	@Deprecated
 	public static void compileMetaluaFile(final LuaState luastate, final File folder, final String fileName) throws IOException {
 		final File regular = new File(folder, fileName);
 		if (regular.isFile() && regular.exists()) {
@@ -116,4 +168,14 @@ public abstract class AbstractMetaLuaModule extends AbstractLuaModule {
 		// Allow to load *.luac for those modules
 		setLuaPath(luaState, Collections.<File> emptyList(), metaluaFolders);
 	}
+
+	private static class CompiledFile {
+		private final long lastModified;
+		private final byte[] bytecode;
+
+		public CompiledFile(final long lastModified, final byte[] bytecode) {
+			this.lastModified = lastModified;
+			this.bytecode = bytecode;
+		}
+	}
 }
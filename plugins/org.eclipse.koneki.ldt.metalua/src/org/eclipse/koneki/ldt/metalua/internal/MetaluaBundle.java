@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.metalua.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.naef.jnlua.LuaException;
+import com.naef.jnlua.LuaState;
+
+/**
+ * Bundle of precompiled Metalua modules.
+ *
+ * A bundle is a single file holding the Lua bytecode of every module of a folder, dumped with <code>string.dump</code>. It is built with
+ * the plug-in by {@link #main(String[])}. Once loaded in a {@link LuaState}, modules are registered in <code>package.preload</code>: requiring them
+ * neither reads nor compiles their sources.
+ *
+ * Lua bytecode depends on the word size of the platform which built it, Lua rejects a bundle built on an other kind of platform. Modules are then
+ * loaded from sources, as without bundle.
+ */
+public final class MetaluaBundle {
+
+	/** Name of bundle file, in Metalua source folder */
+	public static final String FILE_NAME = "metalua.bundle"; //$NON-NLS-1$
+
+	/** "MLB1" */
+	private static final int MAGIC = 0x4d4c4231;
+
+	private static final String LUA_EXTENSION = ".lua"; //$NON-NLS-1$
+	private static final String METALUA_EXTENSION = ".mlua"; //$NON-NLS-1$
+
+	/**
+	 * Compiles a file and dumps it as an hexadecimal string. Strings given to Java must be valid UTF-8 and {@link LuaState#dump(OutputStream)} fails
+	 * for functions bigger than its buffer.
+	 */
+	private static final String COMPILATION = "local path, name, metalua = ...\n" //$NON-NLS-1$
+			+ "local f\n" //$NON-NLS-1$
+			+ "if metalua then\n" //$NON-NLS-1$
+			// Metalua sources are compiled by Metalua, which may run code of extensions while compiling
+			+ "  require 'metalua.package'\n" //$NON-NLS-1$
+			+ "  f = require 'metalua.compiler'.new():srcfile_to_function(path, name)\n" //$NON-NLS-1$
+			+ "else\n" //$NON-NLS-1$
+			+ "  local file = assert(io.open(path, 'rb'))\n" //$NON-NLS-1$
+			+ "  local source = file:read('*a')\n" //$NON-NLS-1$
+			+ "  file:close()\n" //$NON-NLS-1$
+			+ "  f = assert(loadstring(source, name))\n" //$NON-NLS-1$
+			+ "end\n" //$NON-NLS-1$
+			+ "return (string.dump(f):gsub('.', function(c) return string.format('%02x', c:byte()) end))"; //$NON-NLS-1$
+
+	private MetaluaBundle() {
+	}
+
+	/**
+	 * Builds the bundle of a Metalua source folder.
+	 *
+	 * Modules which can not be compiled are left out, they will be loaded from sources.
+	 *
+	 * @param args
+	 *            Metalua source folder, then bundle file to write
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: MetaluaBundle <metalua source folder> <bundle file>"); //$NON-NLS-1$
+			System.exit(1);
+		}
+		final File folder = new File(args[0]);
+		final LuaState state = MetaluaStateFactory.newLuaState(folder.getPath() + File.separator);
+		final Map<String, byte[]> modules = new TreeMap<String, byte[]>();
+		try {
+			compileFolder(state, folder, "", modules); //$NON-NLS-1$
+		} finally {
+			state.close();
+		}
+
+		final OutputStream output = new BufferedOutputStream(new FileOutputStream(args[1]));
+		try {
+			write(modules, output);
+		} finally {
+			output.close();
+		}
+		System.out.println(String.format("%d Metalua modules bundled in %s.", modules.size(), args[1])); //$NON-NLS-1$
+	}
+
+	private static void compileFolder(final LuaState state, final File folder, final String prefix, final Map<String, byte[]> modules) {
+		final File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		for (final File file : files) {
+			final String name = file.getName();
+			if (file.isDirectory()) {
+				compileFolder(state, file, prefix + name + '.', modules);
+			} else if (name.endsWith(LUA_EXTENSION) || name.endsWith(METALUA_EXTENSION)) {
+				final String moduleName = prefix + name.substring(0, name.lastIndexOf('.'));
+				try {
+					modules.put(moduleName, compile(state, file, '@' + prefix.replace('.', '/') + name));
+				} catch (final LuaException e) {
+					System.err.println(String.format("Unable to compile %s, it will be loaded from sources: %s", file, e.getMessage())); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return bytecode of a Lua or Metalua source file, named as given in debug information
+	 * @throws LuaException
+	 *             when file can not be read or compiled
+	 */
+	public static byte[] compile(final LuaState state, final File file, final String chunkName) {
+		final int top = state.getTop();
+		try {
+			state.load(COMPILATION, "metaluaCompilation"); //$NON-NLS-1$
+			state.pushString(file.getPath());
+			state.pushString(chunkName);
+			state.pushBoolean(file.getName().endsWith(METALUA_EXTENSION));
+			state.call(3, 1);
+			return fromHex(state.toString(-1));
+		} finally {
+			state.setTop(top);
+		}
+	}
+
+	private static byte[] fromHex(final String hex) {
+		final byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Registers modules in <code>package.preload</code> of given state. When Lua rejects a module, none is registered.
+	 *
+	 * @param modules
+	 *            bytecode of modules, by module name
+	 * @throws LuaException
+	 *             when bytecode was built on an other kind of platform
+	 */
+	public static void preload(final LuaState state, final Map<String, byte[]> modules) {
+		final int top = state.getTop();
+		state.getGlobal("package"); //$NON-NLS-1$
+		state.getField(-1, "preload"); //$NON-NLS-1$
+		try {
+			for (final Entry<String, byte[]> module : modules.entrySet()) {
+				state.load(new ByteArrayInputStream(module.getValue()), module.getKey());
+				state.setField(-2, module.getKey());
+			}
+		} catch (final IOException e) {
+			// Can not happen with an array
+			throw new IllegalStateException(e);
+		} catch (final LuaException e) {
+			// Leave no partial bundle
+			state.setTop(top + 2);
+			for (final String name : modules.keySet()) {
+				state.pushNil();
+				state.setField(-2, name);
+			}
+			throw e;
+		} finally {
+			state.setTop(top);
+		}
+	}
+
+	public static Map<String, byte[]> read(final InputStream input) throws IOException {
+		final DataInputStream data = new DataInputStream(input);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a Metalua bundle."); //$NON-NLS-1$
+
+		final int count = data.readInt();
+		final Map<String, byte[]> modules = new TreeMap<String, byte[]>();
+		for (int i = 0; i < count; i++) {
+			final String name = data.readUTF();
+			final byte[] bytecode = new byte[data.readInt()];
+			data.readFully(bytecode);
+			modules.put(name, bytecode);
+		}
+		return modules;
+	}
+
+	public static void write(final Map<String, byte[]> modules, final OutputStream output) throws IOException {
+		final DataOutputStream data = new DataOutputStream(output);
+		data.writeInt(MAGIC);
+		data.writeInt(modules.size());
+		for (final Entry<String, byte[]> module : modules.entrySet()) {
+			data.writeUTF(module.getKey());
+			data.writeInt(module.getValue().length);
+			data.write(module.getValue());
+		}
+		data.flush();
+	}
+}
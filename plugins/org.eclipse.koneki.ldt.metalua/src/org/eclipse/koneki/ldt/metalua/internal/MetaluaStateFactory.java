@@ -10,14 +10,18 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.metalua.internal;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.koneki.ldt.metalua.Activator;
-import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
 
 import com.naef.jnlua.LuaException;
@@ -32,6 +36,9 @@ public final class MetaluaStateFactory {
 
 	private static String sourcePath = null;
 
+	/** Precompiled Metalua modules, read at first call */
+	private static Map<String, byte[]> bundle = null;
+
 	private MetaluaStateFactory() {
 	}
 
@@ -49,6 +56,36 @@ public final class MetaluaStateFactory {
 	 * @since 1.0
 	 */
 	public static LuaState newLuaState() {
+		final LuaState l = newLuaState(MetaluaStateFactory.sourcesPath());
+
+		// Spare compilation of Metalua sources when they are precompiled
+		final Map<String, byte[]> modules = getBundle();
+		if (!modules.isEmpty()) {
+			try {
+				MetaluaBundle.preload(l, modules);
+			} catch (final LuaException e) {
+				// Bytecode built on a platform with an other word size, do not try again
+				synchronized (MetaluaStateFactory.class) {
+					if (bundle == modules) {
+						bundle = Collections.emptyMap();
+						Activator.logWarning("Precompiled Metalua is not supported on this platform, Metalua will be loaded from sources.", e); //$NON-NLS-1$
+					}
+				}
+			}
+		}
+
+		// State is ready
+		return l;
+	}
+
+	/**
+	 * Provides a LuaState that can run Metalua code from given folder, without precompiled modules.
+	 * 
+	 * @param metaluaPath
+	 *            Metalua source folder, ending with a separator
+	 * @return LuaState able to run Metalua code
+	 */
+	public static LuaState newLuaState(final String metaluaPath) {
 
 		/*
 		 * Create a regular LuaState, then enable it to run Metalua
@@ -59,20 +96,41 @@ public final class MetaluaStateFactory {
 		l.openLibs();
 
 		// Update path in order to be able to load Metalua
-		String metaluaPath = MetaluaStateFactory.sourcesPath();
 		StringBuilder path = new StringBuilder();
-		path.append(NLS.bind("package.path  = [[{0}?.luac;{0}?.lua]]", metaluaPath));//$NON-NLS-1$
-		path.append(NLS.bind("package.mpath = [[{0}?.mlua]]", metaluaPath));//$NON-NLS-1$
+		path.append("package.path  = [[" + metaluaPath + "?.luac;" + metaluaPath + "?.lua]]");//$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		path.append("package.mpath = [[" + metaluaPath + "?.mlua]]");//$NON-NLS-1$ //$NON-NLS-2$
 		path.append("package.cpath = ''");//$NON-NLS-1$
 
 		// Detect problems
 		l.load(path.toString(), "pathLoading"); //$NON-NLS-1$
 		l.call(0, 0);
 
-		// State is ready
 		return l;
 	}
 
+	/**
+	 * @return precompiled Metalua modules, empty when they are not available
+	 */
+	private static synchronized Map<String, byte[]> getBundle() {
+		if (bundle == null) {
+			bundle = Collections.emptyMap();
+			final File file = new File(sourcesPath(), MetaluaBundle.FILE_NAME);
+			if (file.isFile()) {
+				try {
+					final InputStream input = new BufferedInputStream(new FileInputStream(file));
+					try {
+						bundle = MetaluaBundle.read(input);
+					} finally {
+						input.close();
+					}
+				} catch (final IOException e) {
+					Activator.logWarning("Unable to read precompiled Metalua, Metalua will be loaded from sources.", e); //$NON-NLS-1$
+				}
+			}
+		}
+		return bundle;
+	}
+
 	public static String sourcesPath() {
 
 		// Define source path at first call
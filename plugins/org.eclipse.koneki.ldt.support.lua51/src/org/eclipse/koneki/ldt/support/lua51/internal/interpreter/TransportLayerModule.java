@@ -10,7 +10,12 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.support.lua51.internal.interpreter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
@@ -49,9 +54,17 @@ public final class TransportLayerModule {
 		return javaFunctions.toArray(new NamedJavaFunction[javaFunctions.size()]);
 	}
 
+	/**
+	 * Socket used by debugger, streams are buffered so a whole DBGp packet is read or written with a single call from Lua.
+	 */
 	public static class SocketWrapper {
 
 		private final Socket socket;
+		private InputStream input;
+		private OutputStream output;
+
+		/** Bytes of the packet being read, kept when a read times out before the end of the packet */
+		private final ByteArrayOutputStream packet = new ByteArrayOutputStream();
 
 		public SocketWrapper() {
 			socket = new Socket();
@@ -59,22 +72,45 @@ public final class TransportLayerModule {
 
 		public void connect(String host, int port) throws IOException {
 			socket.connect(new InetSocketAddress(host, port));
+			input = new BufferedInputStream(socket.getInputStream());
+			output = new BufferedOutputStream(socket.getOutputStream());
 		}
 
 		public Object receive() throws IOException {
-			byte readByte = (byte) socket.getInputStream().read();
+			int readByte = input.read();
 			if (readByte == 0)
 				return ""; //$NON-NLS-1$
 			if (readByte == -1)
 				return null;
-			return new String(new byte[] { readByte });
+			return new String(new byte[] { (byte) readByte });
+		}
+
+		/**
+		 * @return next DBGp packet, without its null terminator, <code>null</code> when connection is closed
+		 */
+		public Object receivePacket() throws IOException {
+			for (int readByte = input.read(); readByte != 0; readByte = input.read()) {
+				if (readByte == -1)
+					return null;
+				packet.write(readByte);
+			}
+			String result = packet.toString();
+			packet.reset();
+			return result;
 		}
 
+		/**
+		 * Buffers data, an empty string stands for a null byte. Data is actually sent by {@link #flush()}.
+		 */
 		public void send(String data) throws IOException {
 			if (data.isEmpty())
-				socket.getOutputStream().write(0);
+				output.write(0);
 			else
-				socket.getOutputStream().write(data.getBytes());
+				output.write(data.getBytes());
+		}
+
+		public void flush() throws IOException {
+			output.flush();
 		}
 
 		public void close() throws IOException {
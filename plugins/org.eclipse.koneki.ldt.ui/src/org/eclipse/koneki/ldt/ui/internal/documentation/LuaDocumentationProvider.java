@@ -28,6 +28,7 @@ import org.eclipse.dltk.ui.documentation.TextDocumentationResponse;
 import org.eclipse.koneki.ldt.core.internal.Activator;
 import org.eclipse.koneki.ldt.core.internal.ast.models.LuaASTModelUtils;
 import org.eclipse.koneki.ldt.core.internal.ast.models.LuaDLTKModelUtils;
+import org.eclipse.koneki.ldt.core.internal.ast.models.MarkdownDocumentation;
 import org.eclipse.koneki.ldt.core.internal.ast.models.common.IDocumentationHolder;
 import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
 
@@ -101,7 +102,7 @@ public class LuaDocumentationProvider implements IScriptDocumentationProvider, I
 		// else return member documentation
 		ASTNode astNode = LuaASTModelUtils.getASTNode(member);
 		if (astNode instanceof IDocumentationHolder) {
-			return ((IDocumentationHolder) astNode).getDocumentation();
+			return MarkdownDocumentation.render(((IDocumentationHolder) astNode).getDocumentation());
 		}
 		return null;
 	}
@@ -110,7 +111,7 @@ public class LuaDocumentationProvider implements IScriptDocumentationProvider, I
 		final ModuleDeclaration moduleDeclaration = SourceParserUtil.getModuleDeclaration(module);
 		if (moduleDeclaration instanceof LuaSourceRoot) {
 			final LuaSourceRoot root = (LuaSourceRoot) moduleDeclaration;
-			return root.getFileapi().getDocumentation();
+			return MarkdownDocumentation.render(root.getFileapi().getDocumentation());
 		}
 		return null;
 	}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.ui.internal.editor.completion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IMember;
+import org.eclipse.dltk.core.ISourceModule;
+
+/**
+ * Candidates of the last completion, so that typing more characters of the same word filters them instead of computing them again.
+ *
+ * Candidates are kept along with the source around the completed word, which holds the receiver of fields. They are reused by a completion in the
+ * same module, at the same word start, with the same source around and a word extending the cached one. Candidates also come from other modules, so
+ * cache is dropped on each change of saved models.
+ */
+final class CompletionCache {
+
+	/**
+	 * A proposal, independent of the word typed.
+	 */
+	static final class Candidate {
+		private final IMember member;
+		private final String keyword;
+		private final boolean invocation;
+
+		Candidate(final IMember member, final boolean invocation) {
+			this.member = member;
+			this.keyword = null;
+			this.invocation = invocation;
+		}
+
+		Candidate(final String keyword) {
+			this.member = null;
+			this.keyword = keyword;
+			this.invocation = false;
+		}
+
+		/**
+		 * @return member proposed, <code>null</code> for a keyword
+		 */
+		IMember getMember() {
+			return member;
+		}
+
+		/**
+		 * @return keyword proposed, <code>null</code> for a member
+		 */
+		String getKeyword() {
+			return keyword;
+		}
+
+		boolean isInvocation() {
+			return invocation;
+		}
+
+		/**
+		 * @return <code>true</code> when candidate is still proposed for this word, matching is the one of {@link LuaCompletionEngine}
+		 */
+		private boolean matches(final String word) {
+			if (keyword != null)
+				return keyword.startsWith(word);
+			return member.getElementName().toLowerCase().startsWith(word.toLowerCase());
+		}
+	}
+
+	private static String handle;
+	private static String source;
+	private static int wordStart;
+	private static String word;
+	private static List<Candidate> candidates;
+
+	private static IElementChangedListener changedListener = new IElementChangedListener() {
+		public void elementChanged(ElementChangedEvent event) {
+			clear();
+		}
+	};
+	static {
+		// Reconciling the edited module is not listened, its source is compared instead
+		DLTKCore.addElementChangedListener(changedListener, ElementChangedEvent.POST_CHANGE);
+	}
+
+	private CompletionCache() {
+	}
+
+	/**
+	 * @param position
+	 *            end of the word completed, in source
+	 * @return candidates for this word, <code>null</code> when they have to be computed
+	 */
+	static synchronized List<Candidate> get(final ISourceModule module, final String content, final int position, final String prefix) {
+		final int start = position - prefix.length();
+		if (candidates == null || start != wordStart || !prefix.startsWith(word) || !module.getHandleIdentifier().equals(handle))
+			return null;
+
+		// Source around word must be unchanged
+		final int end = start + word.length();
+		final int tail = content.length() - position;
+		if (source.length() - end != tail || !source.regionMatches(0, content, 0, start) || !source.regionMatches(end, content, position, tail))
+			return null;
+
+		final List<Candidate> matching = new ArrayList<Candidate>();
+		for (final Candidate candidate : candidates) {
+			if (candidate.matches(prefix))
+				matching.add(candidate);
+		}
+		return matching;
+	}
+
+	/**
+	 * Keeps candidates computed for this word, in place of the previous ones.
+	 */
+	static synchronized void put(final ISourceModule module, final String content, final int position, final String prefix,
+			final List<Candidate> computed) {
+		handle = module.getHandleIdentifier();
+		source = content;
+		wordStart = position - prefix.length();
+		word = prefix;
+		candidates = computed;
+	}
+
+	static synchronized void clear() {
+		handle = null;
+		source = null;
+		word = null;
+		candidates = null;
+	}
+}
@@ -39,6 +39,15 @@ import org.eclipse.koneki.ldt.ui.internal.Activator;
 
 public class LuaCompletionEngine extends ScriptCompletionEngine {
 
+	private static final String[] KEYWORDS = new String[] { "and", "break", "do", "else", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			"elseif", "end", "false", "for", "function", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"if", "in", "local", "nil", "not", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"or", "repeat", "return", "then", "true", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"until", "while" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	/** Candidates of current completion, proposals are created once all are known */
+	private final List<CompletionCache.Candidate> candidates = new ArrayList<CompletionCache.Candidate>();
+
 	@Override
 	public void complete(IModuleSource module, int position, int k) {
 		// extract source module
@@ -50,9 +59,20 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 		ISourceModule sourceModule = (ISourceModule) modelElement;
 
 		// Retrieve start position of word current user is typing
-		String start = getWordStarting(module.getSourceContents(), position);
+		final String content = module.getSourceContents();
+		String start = getWordStarting(content, position);
 
 		this.requestor.beginReporting();
+
+		// Typing more characters of the last completed word only narrows its candidates
+		final String word = start.substring(Math.max(start.lastIndexOf('.'), start.lastIndexOf(':')) + 1);
+		final List<CompletionCache.Candidate> cached = CompletionCache.get(sourceModule, content, position, word);
+		if (cached != null) {
+			createProposals(cached, position - word.length(), position);
+			return;
+		}
+
+		candidates.clear();
 		if (start.contains(".") || start.contains(":")) { //$NON-NLS-1$//$NON-NLS-2$
 			// Select between module fields if completion is asked after a module reference
 			final List<String> ids = new ArrayList<String>();
@@ -63,14 +83,27 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 			addLocalDeclarations(sourceModule, start, position);
 
 			// Search global declaration in DLTK model
-			addGlobalDeclarations(sourceModule, start, position);
+			addGlobalDeclarations(sourceModule, start);
 
 			// Add keywords
-			addKeywords(start, position);
+			addKeywords(start);
 		}
+
+		final List<CompletionCache.Candidate> computed = new ArrayList<CompletionCache.Candidate>(candidates);
+		CompletionCache.put(sourceModule, content, position, word, computed);
+		createProposals(computed, position - word.length(), position);
 	}
 
-	private void addGlobalDeclarations(ISourceModule sourceModule, String start, int cursorPosition) {
+	private void createProposals(final List<CompletionCache.Candidate> proposed, final int startIndex, final int endIndex) {
+		for (final CompletionCache.Candidate candidate : proposed) {
+			if (candidate.getKeyword() != null)
+				createKeyWordProposal(candidate.getKeyword(), startIndex, endIndex);
+			else
+				createMemberProposal(candidate.getMember(), startIndex, endIndex, candidate.isInvocation());
+		}
+	}
+
+	private void addGlobalDeclarations(ISourceModule sourceModule, String start) {
 		// get all global variable which start by the string "start"
 		List<Definition> globalvars = LuaASTUtils.getAllGlobalVarsDefinition(sourceModule, start);
 
@@ -78,21 +111,15 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 		for (Definition definition : globalvars) {
 			IMember member = LuaASTModelUtils.getIMember(definition.getModule(), definition.getItem());
 			if (member != null)
-				createMemberProposal(member, cursorPosition - start.length(), cursorPosition);
+				addMemberCandidate(member, false);
 		}
 	}
 
-	private void addKeywords(String start, int cursorPosition) {
-		// TODO key word should be define in a static attribute
-		String[] keywords = new String[] { "and", "break", "do", "else", "elseif", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-				"end", "false", "for", "function", "if",//$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-				"in", "local", "nil", "not", "or",//$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
-				"repeat", "return", "then", "true", "until", "while" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
-
+	private void addKeywords(String start) {
 		// create proposal for each keyword
-		for (int j = 0; j < keywords.length; j++) {
-			if (start.isEmpty() || keywords[j].startsWith(start)) {
-				createKeyWordProposal(keywords[j], cursorPosition - start.length(), cursorPosition);
+		for (int j = 0; j < KEYWORDS.length; j++) {
+			if (start.isEmpty() || KEYWORDS[j].startsWith(start)) {
+				candidates.add(new CompletionCache.Candidate(KEYWORDS[j]));
 			}
 		}
 	}
@@ -108,7 +135,7 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 		for (Item var : localVars) {
 			IMember member = LuaASTModelUtils.getIMember(sourceModule, var);
 			if (member != null)
-				createMemberProposal(member, cursorPosition - start.length(), cursorPosition);
+				addMemberCandidate(member, false);
 		}
 
 	}
@@ -170,7 +197,7 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 			if (goodStart || nostart) {
 				if (lastOperator == '.') {
 					// MANAGE INDEX :
-					createMemberProposal(LuaASTModelUtils.getIMember(currentSourceModule, item), position - fieldName.length(), position, false);
+					addMemberCandidate(LuaASTModelUtils.getIMember(currentSourceModule, item), false);
 				} else if (lastOperator == ':') {
 					// MANAGE INVOCATION :
 					// resolve field type
@@ -191,12 +218,12 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 					// invocation is ok if :
 					// first parameter is named self
 					if ("self".equals(firstParamter.getName()) && firstParamter.getType() == null) //$NON-NLS-1$
-						createMemberProposal(LuaASTModelUtils.getIMember(currentSourceModule, item), position - fieldName.length(), position, true);
+						addMemberCandidate(LuaASTModelUtils.getIMember(currentSourceModule, item), true);
 					// or
 					// if the first parameter is of the same type as the type on which it is invoked : it's ok !
 					final TypeResolution parameterTypeResolution = LuaASTUtils.resolveType(currentSourceModule, firstParamter.getType());
 					if (currentTypeResolution.equals(parameterTypeResolution))
-						createMemberProposal(LuaASTModelUtils.getIMember(currentSourceModule, item), position - fieldName.length(), position, true);
+						addMemberCandidate(LuaASTModelUtils.getIMember(currentSourceModule, item), true);
 				}
 			}
 		}
@@ -285,18 +312,18 @@ public class LuaCompletionEngine extends ScriptCompletionEngine {
 		this.requestor.accept(proposal);
 	}
 
-	private void createMemberProposal(IMember member, int startIndex, int endIndex) {
-		createMemberProposal(member, startIndex, endIndex, false);
+	private void addMemberCandidate(IMember member, boolean invocation) {
+		if (member == null) {
+			NullPointerException e = new NullPointerException("the given IMember is null"); //$NON-NLS-1$
+			Activator.logWarning("Unable to perform completion", e); //$NON-NLS-1$
+			return;
+		}
+		candidates.add(new CompletionCache.Candidate(member, invocation));
 	}
 
 	private void createMemberProposal(IMember member, int startIndex, int endIndex, boolean invocation) {
 		try {
 			CompletionProposal proposal = null;
-			if (member == null) {
-				NullPointerException e = new NullPointerException("the given IMember is null"); //$NON-NLS-1$
-				Activator.logWarning("Unable to perform completion", e); //$NON-NLS-1$
-				return;
-			}
 			switch (member.getElementType()) {
 			case IModelElement.METHOD:
 				// create method proposal
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.ui.internal.editor.formatter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.dltk.core.PreferencesLookupDelegate;
+import org.eclipse.dltk.ui.formatter.FormatterException;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.koneki.ldt.core.internal.formatter.LuaFormatterModule;
+import org.eclipse.koneki.ldt.ui.internal.Activator;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * Formats Lua files with formatter preferences of their project.
+ *
+ * Files are formatted concurrently, each thread with its own Lua state. Formatting a file is aborted after {@link #TIMEOUT} seconds, the file is
+ * then left as is. Files opened in an editor are edited through its document, they are saved only when they had no unsaved changes.
+ */
+public class FormatFilesJob extends Job {
+
+	/** Seconds allowed to format a single file */
+	private static final int TIMEOUT = 30;
+
+	private final List<IFile> files;
+	private final Map<IProject, Map<String, String>> preferences = new HashMap<IProject, Map<String, String>>();
+
+	public FormatFilesJob(final List<IFile> files) {
+		super(Messages.FormatFilesJobName);
+		this.files = files;
+		setUser(true);
+	}
+
+	@Override
+	protected IStatus run(final IProgressMonitor monitor) {
+		monitor.beginTask(Messages.FormatFilesJobName, files.size());
+
+		final LuaFormatterModule module = new LuaFormatterModule(TIMEOUT);
+		final int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size()));
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CompletionService<IFile> completion = new ExecutorCompletionService<IFile>(executor);
+		final MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, IStatus.OK, Messages.FormatFilesJobError, null);
+		try {
+			for (final IFile file : files) {
+				final Map<String, String> projectPreferences = getPreferences(file.getProject());
+				completion.submit(new Callable<IFile>() {
+					@Override
+					public IFile call() throws Exception {
+						if (!monitor.isCanceled())
+							format(file, projectPreferences, module, monitor);
+						return file;
+					}
+				});
+			}
+
+			// Report progress from this thread, monitor is not thread safe
+			for (int remaining = files.size(); remaining > 0;) {
+				if (monitor.isCanceled()) {
+					executor.shutdownNow();
+					return Status.CANCEL_STATUS;
+				}
+				final Future<IFile> formatted = completion.poll(100, TimeUnit.MILLISECONDS);
+				if (formatted == null)
+					continue;
+				remaining--;
+				try {
+					monitor.subTask(formatted.get().getFullPath().toString());
+				} catch (final ExecutionException e) {
+					status.add(new Status(IStatus.ERROR, Activator.PLUGIN_ID, e.getCause().getMessage(), e.getCause()));
+				}
+				monitor.worked(1);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		} finally {
+			executor.shutdown();
+			// States of running formats are released to module, wait for them so that they are closed too
+			awaitTermination(executor);
+			module.dispose();
+			monitor.done();
+		}
+		return status.isOK() ? Status.OK_STATUS : status;
+	}
+
+	/**
+	 * Waits for running formats, each of them is aborted after {@link #TIMEOUT} seconds.
+	 */
+	private static void awaitTermination(final ExecutorService executor) {
+		try {
+			if (!executor.awaitTermination(2 * TIMEOUT, TimeUnit.SECONDS))
+				Activator.logWarning("Formatting threads still run after cancellation, their Lua states will not be closed."); //$NON-NLS-1$
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Map<String, String> getPreferences(final IProject project) {
+		Map<String, String> projectPreferences = preferences.get(project);
+		if (projectPreferences == null) {
+			projectPreferences = new LuaFormatterFactory().retrievePreferences(new PreferencesLookupDelegate(project));
+			preferences.put(project, projectPreferences);
+		}
+		return projectPreferences;
+	}
+
+	/**
+	 * Formats file through its text file buffer, shared with editors. Edit is not applied once job is canceled.
+	 */
+	private static void format(final IFile file, final Map<String, String> preferences, final LuaFormatterModule module,
+			final IProgressMonitor monitor) throws CoreException {
+		final ITextFileBufferManager manager = FileBuffers.getTextFileBufferManager();
+		final IPath path = file.getFullPath();
+		manager.connect(path, LocationKind.IFILE, null);
+		try {
+			final ITextFileBuffer buffer = manager.getTextFileBuffer(path, LocationKind.IFILE);
+			final IDocument document = buffer.getDocument();
+			final String source = document.get();
+			final LuaFormatter formatter = new LuaFormatter(TextUtilities.getDefaultLineDelimiter(document), preferences, module);
+			final TextEdit edit;
+			try {
+				edit = formatter.format(source, 0, source.length(), 0);
+			} catch (final FormatterException e) {
+				throw error(path, e);
+			}
+			if (edit == null || monitor.isCanceled())
+				return;
+
+			// Document may be used by an editor, edit it from the editor thread
+			final boolean saved = !buffer.isDirty();
+			final CoreException[] failure = new CoreException[1];
+			manager.execute(new Runnable() {
+				@Override
+				public void run() {
+					// Skip files edited meanwhile, or when job was canceled while waiting for this thread
+					if (monitor.isCanceled() || !source.equals(document.get()))
+						return;
+					try {
+						edit.apply(document);
+					} catch (final MalformedTreeException e) {
+						failure[0] = error(path, e);
+					} catch (final BadLocationException e) {
+						failure[0] = error(path, e);
+					}
+				}
+			});
+			if (failure[0] != null)
+				throw failure[0];
+			if (saved)
+				buffer.commit(null, false);
+		} finally {
+			manager.disconnect(path, LocationKind.IFILE, null);
+		}
+	}
+
+	private static CoreException error(final IPath path, final Exception e) {
+		return new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, NLS.bind(Messages.FormatFilesJobUnableToFormat, path), e));
+	}
+}
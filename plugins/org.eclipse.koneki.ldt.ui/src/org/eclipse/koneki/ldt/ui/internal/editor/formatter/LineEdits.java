@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.ui.internal.editor.formatter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * Builds the smallest edits turning lines of a source into formatted ones.
+ *
+ * Formatting only changes white spaces around code of each line, so lines are compared one by one: each changed line gets one edit of the part which
+ * differs between its original and formatted versions.
+ */
+final class LineEdits {
+
+	private LineEdits() {
+	}
+
+	/**
+	 * @param source
+	 *            original source
+	 * @param delimiter
+	 *            line delimiter used by formatter
+	 * @param firstLine
+	 *            first line of source to compare, starting at 0
+	 * @param lastLine
+	 *            last line of source to compare
+	 * @param formatted
+	 *            formatted code, starting at line formattedFirstLine of source
+	 * @param formattedFirstLine
+	 *            line of source where formatted code starts
+	 * @return edits of changed lines, <code>null</code> when no line changed
+	 */
+	public static MultiTextEdit create(final String source, final String delimiter, final int firstLine, final int lastLine, final String formatted,
+			final int formattedFirstLine) {
+		return create(source, lineOffsets(source, delimiter), delimiter, firstLine, lastLine, formatted, lineOffsets(formatted, delimiter),
+				formattedFirstLine);
+	}
+
+	/**
+	 * @param source
+	 *            original source
+	 * @param delimiter
+	 *            line delimiter used by formatter
+	 * @param formatted
+	 *            formatted source
+	 * @return edits of changed lines, a single edit replacing the whole source when lines do not match, <code>null</code> when no line changed
+	 */
+	public static TextEdit create(final String source, final String delimiter, final String formatted) {
+		final List<Integer> sourceOffsets = lineOffsets(source, delimiter);
+		final List<Integer> formattedOffsets = lineOffsets(formatted, delimiter);
+		if (sourceOffsets.size() != formattedOffsets.size())
+			return new ReplaceEdit(0, source.length(), formatted);
+		return create(source, sourceOffsets, delimiter, 0, sourceOffsets.size() - 1, formatted, formattedOffsets, 0);
+	}
+
+	private static MultiTextEdit create(final String source, final List<Integer> sourceOffsets, final String delimiter, final int firstLine,
+			final int lastLine, final String formatted, final List<Integer> formattedOffsets, final int formattedFirstLine) {
+		final MultiTextEdit edit = new MultiTextEdit();
+		final int last = Math.min(lastLine, sourceOffsets.size() - 1);
+		for (int line = Math.max(firstLine, formattedFirstLine); line <= last; line++) {
+			final int formattedLine = line - formattedFirstLine;
+			if (formattedLine >= formattedOffsets.size())
+				break;
+
+			// Compare lines content, without delimiters
+			final int start = sourceOffsets.get(line);
+			final int end = lineEnd(source, delimiter, sourceOffsets, line);
+			final int formattedStart = formattedOffsets.get(formattedLine);
+			final int formattedEnd = lineEnd(formatted, delimiter, formattedOffsets, formattedLine);
+
+			int prefix = 0;
+			while (start + prefix < end && formattedStart + prefix < formattedEnd
+					&& source.charAt(start + prefix) == formatted.charAt(formattedStart + prefix)) {
+				prefix++;
+			}
+			int suffix = 0;
+			while (end - suffix > start + prefix && formattedEnd - suffix > formattedStart + prefix
+					&& source.charAt(end - suffix - 1) == formatted.charAt(formattedEnd - suffix - 1)) {
+				suffix++;
+			}
+
+			final int length = end - suffix - (start + prefix);
+			final String replacement = formatted.substring(formattedStart + prefix, formattedEnd - suffix);
+			if (length > 0 || replacement.length() > 0)
+				edit.addChild(new ReplaceEdit(start + prefix, length, replacement));
+		}
+		return edit.hasChildren() ? edit : null;
+	}
+
+	/**
+	 * @return offset of each line start
+	 */
+	private static List<Integer> lineOffsets(final String code, final String delimiter) {
+		final List<Integer> offsets = new ArrayList<Integer>();
+		offsets.add(0);
+		for (int index = code.indexOf(delimiter); index >= 0; index = code.indexOf(delimiter, index + delimiter.length())) {
+			offsets.add(index + delimiter.length());
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return offset of line end, before its delimiter
+	 */
+	private static int lineEnd(final String code, final String delimiter, final List<Integer> offsets, final int line) {
+		return line + 1 < offsets.size() ? offsets.get(line + 1) - delimiter.length() : code.length();
+	}
+}
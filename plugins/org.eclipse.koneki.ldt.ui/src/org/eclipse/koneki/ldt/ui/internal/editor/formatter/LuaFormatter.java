@@ -19,11 +19,10 @@ import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.text.IRegion;
+import org.eclipse.koneki.ldt.core.internal.formatter.IndentedRange;
 import org.eclipse.koneki.ldt.core.internal.formatter.LuaFormatterModule;
 import org.eclipse.koneki.ldt.ui.internal.Activator;
 import org.eclipse.swt.widgets.Display;
-import org.eclipse.text.edits.ReplaceEdit;
 import org.eclipse.text.edits.TextEdit;
 
 public class LuaFormatter extends AbstractScriptFormatter {
@@ -35,10 +34,20 @@ public class LuaFormatter extends AbstractScriptFormatter {
 	private final String tabulation;
 	private final boolean formatTableValues;
 
-	private final static LuaFormatterModule formatLuaModule = new LuaFormatterModule();
+	private final static LuaFormatterModule DEFAULT_MODULE = new LuaFormatterModule();
+	private final LuaFormatterModule formatLuaModule;
 
 	protected LuaFormatter(final String lineDelimiter, final Map<String, String> preferences) {
+		this(lineDelimiter, preferences, DEFAULT_MODULE);
+	}
+
+	/**
+	 * @param module
+	 *            formats code, may be shared by formatters of several threads
+	 */
+	LuaFormatter(final String lineDelimiter, final Map<String, String> preferences, final LuaFormatterModule module) {
 		super(preferences);
+		formatLuaModule = module;
 		delimiter = lineDelimiter;
 		/*
 		 * Get formatting constants from preferences
@@ -74,6 +83,9 @@ public class LuaFormatter extends AbstractScriptFormatter {
 	 */
 	@Override
 	public TextEdit format(final String source, final int offset, final int length, final int indentationLevel) throws FormatterException {
+		if (length < source.length())
+			return formatRange(source, offset, length);
+
 		/*
 		 * Format given source code
 		 */
@@ -85,48 +97,40 @@ public class LuaFormatter extends AbstractScriptFormatter {
 			// With one type of tabulation
 			formatted = formatLuaModule.indent(source, delimiter, formatTableValues, tabulation);
 		}
-		if (length < source.length()) {
-			final Document doc = new Document(source);
-			try {
-				// Get line change range form original source
-				final int startLine = doc.getLineOfOffset(offset);
-				final int endLine = doc.getLineOfOffset(offset + length);
-
-				/*
-				 * Get source code from those lines in formatted code
-				 */
-				final StringBuffer code = new StringBuffer();
-				final Document formattedDoc = new Document(formatted);
-				int lengthToReplace = 0;
-				for (int line = startLine; line <= endLine; line++) {
-					// Sum selected text length
-					lengthToReplace += doc.getLineLength(line);
+		if (source.equals(formatted)) {
+			// If no modification have be done on the source code when formatting,
+			// avoid the editor to be dirty/stale mode by returning null
+			return null;
+		}
+		// Edit only changed lines, so that undo, markers and reconciler do not consider the whole document as changed
+		return LineEdits.create(source, delimiter, formatted);
+	}
 
-					// Retrieve formatted code
-					final IRegion lineDescription = formattedDoc.getLineInformation(line);
-					final String codeOnTheLine = formattedDoc.get(lineDescription.getOffset(), lineDescription.getLength());
-					code.append(codeOnTheLine);
+	/**
+	 * Formats lines of selection. Only top-level statements enclosing them are formatted, and only changed lines are edited.
+	 */
+	private TextEdit formatRange(final String source, final int offset, final int length) {
+		final Document doc = new Document(source);
+		try {
+			// Get line change range form original source
+			final int startLine = doc.getLineOfOffset(offset);
+			final int endLine = doc.getLineOfOffset(offset + length);
 
-					// Append new line when needed
-					final String lineEnd = formattedDoc.getLineDelimiter(line);
-					if (lineEnd != null) {
-						code.append(lineEnd);
-					}
-				}
-				final int selectionStartOffset = doc.getLineOffset(startLine);
-				return new ReplaceEdit(selectionStartOffset, lengthToReplace, code.toString());
-			} catch (BadLocationException e) {
-				MessageDialog.openError(Display.getDefault().getActiveShell(), Messages.LuaFormatterErrorWhileFormattingTitle,
-						Messages.LuaFormatterUnableToFormatSelection);
-				Activator.logError(Messages.LuaFormatterUnableToFormatSelection, e);
+			final IndentedRange range;
+			if (tabPolicy == TabStyle.MIXED) {
+				range = formatLuaModule.indentRange(source, delimiter, formatTableValues, tabSize, indentationSize, startLine, endLine);
+			} else {
+				range = formatLuaModule.indentRange(source, delimiter, formatTableValues, tabulation, startLine, endLine);
 			}
-		} else if (source.equals(formatted)) {
-			// If no modification have be done on the source code when formatting,
-			// avoid the editor to be dirty/stale mode by returning null
+			if (range == null)
+				return null;
+			return LineEdits.create(source, delimiter, startLine, endLine, range.getCode(), range.getFirstLine());
+		} catch (BadLocationException e) {
+			MessageDialog.openError(Display.getDefault().getActiveShell(), Messages.LuaFormatterErrorWhileFormattingTitle,
+					Messages.LuaFormatterUnableToFormatSelection);
+			Activator.logError(Messages.LuaFormatterUnableToFormatSelection, e);
 			return null;
 		}
-		// Construct text edition
-		return new ReplaceEdit(offset, length, formatted);
 	}
 
 	@Override
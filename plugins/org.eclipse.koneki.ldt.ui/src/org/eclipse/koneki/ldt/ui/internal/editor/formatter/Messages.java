@@ -15,6 +15,9 @@ import org.eclipse.osgi.util.NLS;
 // CHECKSTYLE NLS: OFF
 public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.koneki.ldt.ui.internal.editor.formatter.messages"; //$NON-NLS-1$
+	public static String FormatFilesJobError;
+	public static String FormatFilesJobName;
+	public static String FormatFilesJobUnableToFormat;
 	public static String LuaFormatterErrorWhileFormattingTitle;
 	public static String LuaFormatterFactoryPreviewNotFound;
 	public static String LuaFormatterUnableToFormatSelection;
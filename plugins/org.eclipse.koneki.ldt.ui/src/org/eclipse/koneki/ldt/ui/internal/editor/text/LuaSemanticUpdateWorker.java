@@ -11,7 +11,10 @@
 package org.eclipse.koneki.ldt.ui.internal.editor.text;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.eclipse.dltk.ast.ASTNode;
@@ -32,22 +35,83 @@ import org.eclipse.koneki.ldt.core.internal.ast.models.LuaASTUtils;
 import org.eclipse.koneki.ldt.core.internal.ast.models.api.Item;
 import org.eclipse.koneki.ldt.core.internal.ast.models.api.LuaFileAPI;
 import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Block;
 import org.eclipse.koneki.ldt.core.internal.ast.models.file.Identifier;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LocalVar;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LuaExpression;
 import org.eclipse.koneki.ldt.ui.internal.Activator;
 
+/**
+ * Highlights local and global variables.
+ *
+ * Highlights of the last valid version of a module are kept. When the module is highlighted again, only identifiers around the edited region, which
+ * lies between the common prefix and suffix of both versions, are visited again; highlights out of it are moved by the length delta. The whole module
+ * is visited again when the edit may change the meaning of the source around it: when it involves strings, comments or line ends, or when it
+ * changes the scopes of local variables around it.
+ */
 public class LuaSemanticUpdateWorker extends ASTVisitor implements ISemanticHighlighter, ISemanticHighlighterExtension {
 
 	private static final String HL_LOCAL_VARIABLE = ILuaColorConstants.LUA_LOCAL_VARIABLE;
 	private static final String HL_GLOBAL_VARIABLE = ILuaColorConstants.LUA_GLOBAL_VARIABLE;
 
+	/** Characters which may change tokens around an edit: strings, comments, long brackets and line ends */
+	private static final String LEXICAL_CHARACTERS = "\"'[]=-\r\n"; //$NON-NLS-1$
+
+	/** Scope bound lying in edited region */
+	private static final int IN_REGION = -1;
+
+	/**
+	 * A highlighted position
+	 */
+	private static final class Highlight {
+		private final int start;
+		private final int end;
+		private final String key;
+
+		private Highlight(final int start, final int end, final String key) {
+			this.start = start;
+			this.end = end;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * Highlights of a version of a module
+	 */
+	private static final class Highlighted {
+		private final String handle;
+		private final String source;
+		private final LuaSourceRoot root;
+		private final List<Highlight> highlights;
+
+		private Highlighted(final String handle, final String source, final LuaSourceRoot root, final List<Highlight> highlights) {
+			this.handle = handle;
+			this.source = source;
+			this.root = root;
+			this.highlights = highlights;
+		}
+	}
+
 	private ISemanticHighlightingRequestor requestor;
 
+	/** Region visited by current traversal, bounds included */
+	private int regionStart;
+	private int regionEnd;
+
+	/** Highlights found by current traversal */
+	private List<Highlight> highlights;
+
+	/** Last valid version highlighted */
+	private Highlighted last;
+
 	public SemanticHighlighting[] getSemanticHighlightings() {
 		return new SemanticHighlighting[] { new LuaSemanticHighlighting(ILuaColorConstants.LUA_LOCAL_VARIABLE, null),
 				new LuaSemanticHighlighting(ILuaColorConstants.LUA_GLOBAL_VARIABLE, null) };
 	}
 
 	public boolean visitGeneral(ASTNode node) throws Exception {
+		if (!overlaps(node, regionStart, regionEnd))
+			return false;
 		if (node instanceof LuaSourceRoot) {
 			// no semantic highlighting if the code is in error.
 			return !((LuaSourceRoot) node).hasError();
@@ -61,9 +125,9 @@ public class LuaSemanticUpdateWorker extends ASTVisitor implements ISemanticHigh
 			final Item item = ((Identifier) node).getDefinition();
 			if (item != null) {
 				if (LuaASTUtils.isLocalVariable(item)) {
-					requestor.addPosition(node.sourceStart(), node.sourceEnd(), HL_LOCAL_VARIABLE);
+					highlights.add(new Highlight(node.sourceStart(), node.sourceEnd(), HL_LOCAL_VARIABLE));
 				} else if (LuaASTUtils.isUnresolvedGlobal(item) || LuaASTUtils.isGlobalVariable(item)) {
-					requestor.addPosition(node.sourceStart(), node.sourceEnd(), HL_GLOBAL_VARIABLE);
+					highlights.add(new Highlight(node.sourceStart(), node.sourceEnd(), HL_GLOBAL_VARIABLE));
 				}
 			} else {
 				final String message = "{0} starting at offset {1} with length {2} has no definition."; //$NON-NLS-1$
@@ -82,19 +146,152 @@ public class LuaSemanticUpdateWorker extends ASTVisitor implements ISemanticHigh
 		return result.toArray(new String[result.size()]);
 	}
 
-	public void process(IModuleSource code, ISemanticHighlightingRequestor req) {
+	public synchronized void process(IModuleSource code, ISemanticHighlightingRequestor req) {
 		this.requestor = req;
 		try {
-			((ModuleDeclaration) parseCode(code)).traverse(this);
+			final ModuleDeclaration module = (ModuleDeclaration) parseCode(code);
+			final List<Highlight> found;
+			if (module instanceof LuaSourceRoot && !((LuaSourceRoot) module).hasError()) {
+				found = highlight(code, (LuaSourceRoot) module);
+			} else {
+				last = null;
+				found = highlight(module, 0, Integer.MAX_VALUE);
+			}
+			for (final Highlight highlight : found) {
+				requestor.addPosition(highlight.start, highlight.end, highlight.key);
+			}
 		} catch (ModelException e) {
+			last = null;
 			throw new AbortSemanticHighlightingException();
 			// CHECKSTYLE:OFF
 		} catch (Exception e) {
 			// CHECKSTYLE:ON
+			last = null;
 			throw new AbortSemanticHighlightingException();
 		}
 	}
 
+	/**
+	 * @return highlights of a valid module, computed from the ones of its previous version when possible
+	 */
+	private List<Highlight> highlight(final IModuleSource code, final LuaSourceRoot root) throws Exception {
+		final String handle = code.getModelElement() != null ? code.getModelElement().getHandleIdentifier() : null;
+		final String source = code.getSourceContents();
+		List<Highlight> found = null;
+		if (last != null && handle != null && handle.equals(last.handle))
+			found = highlightChanges(last, source, root);
+		if (found == null)
+			found = highlight(root, 0, Integer.MAX_VALUE);
+		last = handle != null ? new Highlighted(handle, source, root, found) : null;
+		return found;
+	}
+
+	/**
+	 * @return highlights of identifiers overlapping given region
+	 */
+	private List<Highlight> highlight(final ModuleDeclaration module, final int start, final int end) throws Exception {
+		regionStart = start;
+		regionEnd = end;
+		highlights = new ArrayList<Highlight>();
+		try {
+			module.traverse(this);
+			return highlights;
+		} finally {
+			highlights = null;
+		}
+	}
+
+	/**
+	 * @return highlights of new version of a module, <code>null</code> when the whole module has to be highlighted again
+	 */
+	private List<Highlight> highlightChanges(final Highlighted previous, final String source, final LuaSourceRoot root) throws Exception {
+		// Edited region lies between common prefix and common suffix of both versions
+		final String oldSource = previous.source;
+		final int common = Math.min(oldSource.length(), source.length());
+		int start = 0;
+		while (start < common && oldSource.charAt(start) == source.charAt(start))
+			start++;
+		int suffix = 0;
+		while (suffix < common - start && oldSource.charAt(oldSource.length() - suffix - 1) == source.charAt(source.length() - suffix - 1))
+			suffix++;
+		final int oldEnd = oldSource.length() - suffix;
+		final int end = source.length() - suffix;
+		final int delta = source.length() - oldSource.length();
+
+		// Source around edit must keep its meaning
+		if (containsAny(oldSource, start, oldEnd, LEXICAL_CHARACTERS) || containsAny(source, start, end, LEXICAL_CHARACTERS))
+			return null;
+		if (!getScopes(previous.root, start, oldEnd, delta).equals(getScopes(root, start, end, 0)))
+			return null;
+
+		// Highlights before and after edited region are kept, moved by delta after it
+		final List<Highlight> found = new ArrayList<Highlight>();
+		for (final Highlight highlight : previous.highlights) {
+			if (highlight.end < start)
+				found.add(highlight);
+		}
+		found.addAll(highlight(root, start, end));
+		for (final Highlight highlight : previous.highlights) {
+			if (highlight.start > oldEnd)
+				found.add(new Highlight(highlight.start + delta, highlight.end + delta, highlight.key));
+		}
+		return found;
+	}
+
+	/**
+	 * @return names and scopes of local variables from blocks overlapping given region, scope bounds after region are moved by delta
+	 */
+	private static List<String> getScopes(final LuaSourceRoot root, final int start, final int end, final int delta) throws Exception {
+		final List<String> scopes = new ArrayList<String>();
+		root.getInternalContent().traverse(new ASTVisitor() {
+			@Override
+			public boolean visitGeneral(final ASTNode node) throws Exception {
+				if (node instanceof LocalVar || !overlaps(node, start, end))
+					return false;
+				if (node instanceof Block) {
+					for (final LocalVar localVar : ((Block) node).getLocalVars()) {
+						// Variables scoped in region only matter to identifiers visited again
+						final int min = getBound(localVar.getScopeMinOffset(), start, end, delta);
+						final int max = getBound(localVar.getScopeMaxOffset(), start, end, delta);
+						if (min != IN_REGION || max != IN_REGION)
+							scopes.add(localVar.getVar().getName() + ':' + min + ':' + max);
+					}
+				}
+				return true;
+			}
+		});
+		Collections.sort(scopes);
+		return scopes;
+	}
+
+	private static int getBound(final int offset, final int start, final int end, final int delta) {
+		if (offset < start)
+			return offset;
+		if (offset > end)
+			return offset + delta;
+		return IN_REGION;
+	}
+
+	/**
+	 * @return <code>true</code> when node may hold identifiers overlapping given region, bounds included
+	 */
+	private static boolean overlaps(final ASTNode node, final int start, final int end) {
+		// Only blocks and expressions are known to enclose their children
+		if (!(node instanceof Block || node instanceof LuaExpression))
+			return true;
+		if (node.sourceStart() < 0 || node.sourceEnd() < node.sourceStart())
+			return true;
+		return node.sourceStart() <= end && node.sourceEnd() >= start;
+	}
+
+	private static boolean containsAny(final String source, final int start, final int end, final String characters) {
+		for (int i = start; i < end; i++) {
+			if (characters.indexOf(source.charAt(i)) >= 0)
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * @param code
 	 * @return
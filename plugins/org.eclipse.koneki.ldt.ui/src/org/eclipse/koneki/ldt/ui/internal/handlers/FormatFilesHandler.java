@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.ui.internal.handlers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.koneki.ldt.core.LuaNature;
+import org.eclipse.koneki.ldt.ui.internal.editor.formatter.FormatFilesJob;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+/**
+ * Formats all Lua files of selected resources in background.
+ */
+public class FormatFilesHandler extends AbstractHandler {
+
+	@Override
+	public Object execute(final ExecutionEvent event) throws ExecutionException {
+		final ISelection selection = HandlerUtil.getCurrentSelection(event);
+		if (!(selection instanceof IStructuredSelection))
+			return null;
+
+		// Selected resources may contain each other
+		final Set<IFile> files = new LinkedHashSet<IFile>();
+		final IResourceVisitor visitor = new IResourceVisitor() {
+			@Override
+			public boolean visit(final IResource resource) throws CoreException {
+				if (resource.getType() == IResource.FILE && "lua".equals(resource.getFileExtension())) //$NON-NLS-1$
+					files.add((IFile) resource);
+				return !resource.isDerived();
+			}
+		};
+		try {
+			for (final Iterator<?> iterator = ((IStructuredSelection) selection).iterator(); iterator.hasNext();) {
+				final Object element = iterator.next();
+				if (!(element instanceof IAdaptable))
+					continue;
+				final IResource resource = (IResource) ((IAdaptable) element).getAdapter(IResource.class);
+				if (resource != null && resource.getProject() != null && resource.isAccessible() && resource.getProject().hasNature(LuaNature.ID))
+					resource.accept(visitor);
+			}
+		} catch (final CoreException e) {
+			throw new ExecutionException(Messages.FormatFilesHandlerUnableToListFiles, e);
+		}
+
+		if (!files.isEmpty())
+			new FormatFilesJob(new ArrayList<IFile>(files)).schedule();
+		return null;
+	}
+}
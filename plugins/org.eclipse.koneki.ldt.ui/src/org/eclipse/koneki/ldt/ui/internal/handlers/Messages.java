@@ -15,6 +15,7 @@ import org.eclipse.osgi.util.NLS;
 public final class Messages extends NLS {
 	// CHECKSTYLE NLS: OFF
 	private static final String BUNDLE_NAME = "org.eclipse.koneki.ldt.ui.internal.handlers.messages"; //$NON-NLS-1$
+	public static String FormatFilesHandlerUnableToListFiles;
 	public static String LuaExecutionEnvironmentBuildpathContainerDocumentationCommandHandlerUnableToDisplay;
 	public static String LuaExecutionEnvironmentBuildpathContainerDocumentationCommandHandlerUnableToFindExecutionEnvironment;
 	static {
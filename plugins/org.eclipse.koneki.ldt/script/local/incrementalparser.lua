@@ -0,0 +1,286 @@
+--------------------------------------------------------------------------------
+--  Copyright (c) 2013 Sierra Wireless.
+--  All rights reserved. This program and the accompanying materials
+--  are made available under the terms of the Eclipse Public License v1.0
+--  which accompanies this distribution, and is available at
+--  http://www.eclipse.org/legal/epl-v10.html
+--
+--  Contributors:
+--       Sierra Wireless - initial API and implementation
+--------------------------------------------------------------------------------
+
+--
+-- Incremental Metalua parsing of sources being edited.
+--
+-- Last AST produced for a module is kept. When the module is parsed again,
+-- only the top-level statements touched by the edit are parsed through
+-- Metalua, then spliced into previous AST. Positions of following statements
+-- are shifted, so that resulting AST is the one a full parse would produce.
+--
+-- A full parse is done when there is no previous AST, when the edit spans
+-- every statement, or when statement boundaries around the edit may have
+-- moved: parse error in edited statements, unterminated long comment,
+-- statement starting with a parenthesis which could continue previous one.
+--
+local M = {}
+local lexer = require 'metalua.grammar.lexer'
+
+-- Quantity of ASTs kept
+local CACHE_SIZE = 4
+
+-- Previous parses, most recently used last: { key = ..., source = ..., ast = ... }
+local cache = {}
+
+-- Length of chunks compared at once when looking for edited area
+local CHUNK = 256
+
+--------------------------------------
+-- Cache management
+local function lookup(key)
+	for index, entry in ipairs(cache) do
+		if entry.key == key then
+			table.remove(cache, index)
+			return entry
+		end
+	end
+end
+
+local function store(key, source, ast)
+	lookup(key)
+	table.insert(cache, {key = key, source = source, ast = ast})
+	if #cache > CACHE_SIZE then table.remove(cache, 1) end
+end
+
+--------------------------------------
+-- Edited area
+
+-- @return length of common prefix of both strings
+local function prefixlength(s1, s2, max)
+	local i = 1
+	while i + CHUNK - 1 <= max and s1:sub(i, i + CHUNK - 1) == s2:sub(i, i + CHUNK - 1) do
+		i = i + CHUNK
+	end
+	while i <= max and s1:byte(i) == s2:byte(i) do
+		i = i + 1
+	end
+	return i - 1
+end
+
+-- @return length of common suffix of both strings, up to max
+local function suffixlength(s1, s2, max)
+	local l1, l2 = #s1, #s2
+	local n = 0
+	while n + CHUNK <= max and s1:sub(l1 - n - CHUNK + 1, l1 - n) == s2:sub(l2 - n - CHUNK + 1, l2 - n) do
+		n = n + CHUNK
+	end
+	while n < max and s1:byte(l1 - n) == s2:byte(l2 - n) do
+		n = n + 1
+	end
+	return n
+end
+
+-- @return offset of the first character of the line containing offset
+local function linestart(source, offset)
+	local i = offset - 1
+	while i >= 1 and source:byte(i) ~= 10 do
+		i = i - 1
+	end
+	return i + 1
+end
+
+local function countlines(source, first, last)
+	if last < first then return 0 end
+	local _, count = source:sub(first, last):gsub('\n', '\n')
+	return count
+end
+
+--------------------------------------
+-- AST handling
+
+local function isposition(t)
+	return type(t.offset) == 'number' and type(t.line) == 'number' and type(t.column) == 'number'
+end
+
+-- Metalua reads an unterminated long comment as a short one, a full parse could close it further
+local function hasunterminatedcomment(text)
+	local position = 1
+	while true do
+		local openend, equals
+		position, openend, equals = text:find('%-%-%[(=*)%[', position)
+		if not position then return false end
+		local _, closeend = text:find(']' .. equals .. ']', openend + 1, true)
+		if not closeend then return true end
+		position = closeend + 1
+	end
+end
+
+--
+-- Shift every position reachable from given roots, located at or after boundary
+--
+-- Positions are shared between nodes, visited ones are remembered so that they
+-- are shifted once. Parents links, added by models builders, are not followed.
+local function shift(roots, boundary, delta, deltalines, oldlinestart, newlinestart)
+	local visited = {}
+	local stack = {}
+	for _, root in ipairs(roots) do table.insert(stack, root) end
+	while #stack > 0 do
+		local t = table.remove(stack)
+		if not visited[t] then
+			visited[t] = true
+			local visit = true
+			if isposition(t) then
+				if t.offset < boundary then
+					-- Position in unchanged prefix or in replaced area, facing links may lead there
+					visit = false
+				else
+					if t.offset - t.column + 1 == oldlinestart then
+						-- On the line where edit ends, column moves too
+						t.column = t.offset + delta - newlinestart + 1
+					end
+					t.offset = t.offset + delta
+					t.line = t.line + deltalines
+				end
+			end
+			if visit then
+				for key, value in pairs(t) do
+					if type(value) == 'table' and key ~= 'parent' and not visited[value] then
+						table.insert(stack, value)
+					end
+				end
+			end
+		end
+	end
+end
+
+--
+-- Build AST of source by parsing again only top-level statements of previous
+-- AST touched by the edit
+--
+-- @return AST, nil when a full parse is needed
+local function splice(mlc, oldsource, oldast, source)
+	local count = #oldast
+	if count == 0 or not oldast.lineinfo then return nil end
+
+	-- Edited area: characters from editstart to oldeditend - 1 were replaced
+	local minlength = math.min(#oldsource, #source)
+	local prefix = prefixlength(oldsource, source, minlength)
+	local suffix = suffixlength(oldsource, source, minlength - prefix)
+	local editstart = prefix + 1
+	local oldeditend = #oldsource - suffix + 1
+	local neweditend = #source - suffix + 1
+	local delta = #source - #oldsource
+
+	-- Touched statements, a statement owns spaces and comments before it.
+	-- Statements adjacent to the edit are touched too, as tokens may merge.
+	local first, last
+	local rangestart = 1
+	for index = 1, count do
+		local rangeend
+		if index < count then
+			local facing = oldast[index + 1].lineinfo.first.facing
+			if not facing then return nil end
+			rangeend = facing.offset
+		else
+			rangeend = #oldsource
+		end
+		if rangestart <= oldeditend and rangeend + 1 >= editstart then
+			first = first or index
+			last = index
+		end
+		rangestart = rangeend + 1
+	end
+	if not first or (first == 1 and last == count) then return nil end
+
+	-- Area to parse, from end of previous untouched statement to start of next one
+	local previous = first > 1 and oldast[first].lineinfo.first.facing
+	if first > 1 and not previous then return nil end
+	local nextstatement = last < count and oldast[last + 1]
+	local regionstart = previous and previous.offset + 1 or 1
+	local regionend = #source
+	local boundary
+	if nextstatement then
+		boundary = nextstatement.lineinfo.first.offset
+		regionend = boundary + delta - 1
+		-- Parenthesis may turn next statement into a call continuing edited ones
+		if source:sub(regionend + 1, regionend + 1) == '(' then return nil end
+	end
+
+	-- Blanked prefix keeps lines, columns and offsets of parsed statements right
+	local text = source:sub(regionstart, regionend)
+	if hasunterminatedcomment(text) then return nil end
+	local blank = source:sub(1, regionstart - 1):gsub('[^\n]', ' ')
+	local ok, region = pcall(mlc.src_to_ast, mlc, blank .. text)
+	if not ok or #region == 0 or not region.lineinfo then return nil end
+	-- Chunk first position is not the one of its first token, it faces nothing
+	local regionfirst = region[1].lineinfo.first
+	local regionlast = region.lineinfo.last
+	if previous and source:sub(regionfirst.offset, regionfirst.offset) == '(' then return nil end
+
+	-- Shift following statements
+	if nextstatement then
+		local roots = {oldast.lineinfo.last}
+		for index = last + 1, count do table.insert(roots, oldast[index]) end
+		local deltalines = countlines(source, editstart, neweditend - 1) - countlines(oldsource, editstart, oldeditend - 1)
+		shift(roots, boundary, delta, deltalines, linestart(oldsource, oldeditend), linestart(source, neweditend))
+	end
+
+	-- Link boundary tokens, and comments between them, as lexer does
+	if previous then
+		previous.facing = regionfirst
+		regionfirst.facing = previous
+		previous.comments = regionfirst.comments
+	end
+	local nextfirst = nextstatement and nextstatement.lineinfo.first
+	if nextfirst then
+		nextfirst.facing = regionlast
+		regionlast.facing = nextfirst
+		nextfirst.comments = regionlast.comments
+	end
+
+	local ast = {}
+	for index = 1, first - 1 do table.insert(ast, oldast[index]) end
+	for _, statement in ipairs(region) do table.insert(ast, statement) end
+	for index = last + 1, count do table.insert(ast, oldast[index]) end
+	ast.lineinfo = lexer.new_lineinfo(
+		previous and oldast.lineinfo.first or region.lineinfo.first,
+		nextstatement and oldast.lineinfo.last or regionlast)
+	return ast
+end
+
+--------------------------------------
+-- Public API
+
+---
+-- Parse source, reusing previous AST of the same key when possible
+--
+-- Errors are raised as Metalua compiler does.
+--
+-- @param	mlc Metalua compiler
+-- @param	source Code to parse
+-- @param	key Identifies successive versions of the same source, handle of the edited element for instance
+-- @return	AST, as mlc:src_to_ast returns it
+function M.parse(mlc, source, key)
+	key = key or ''
+	local entry = lookup(key)
+	local ast
+	if entry then
+		if entry.source == source then
+			ast = entry.ast
+		else
+			ast = splice(mlc, entry.source, entry.ast, source)
+		end
+		-- Keep last valid AST while source is not valid
+		store(key, entry.source, entry.ast)
+	end
+	ast = ast or mlc:src_to_ast(source)
+	store(key, source, ast)
+	return ast
+end
+
+---
+-- Forget previous AST of key
+function M.forget(key)
+	lookup(key or '')
+end
+
+return M
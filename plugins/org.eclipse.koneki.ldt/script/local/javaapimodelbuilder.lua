@@ -85,19 +85,33 @@ function M._typeref (_type,handledexpr)
 end
 
 -- create item
-function M._item(_item,notemplate,handledexpr)
-	local description = ""
-	if notemplate then		
-		local t = {}
-		if _item.shortdescription and _item.shortdescription ~= "" then table.insert(t,_item.shortdescription) end
-		if _item.description and _item.description ~= "" then table.insert(t,_item.description) end
-		if #t ~= 0 then description = string.format("<div style='white-space:pre'>%s</div>",table.concat(t,"\n") ) end
-	else 
-		description = templateengine.applytemplate(_item, 3)
-	end 
+-- compute documentation of an item or a record
+function M._description(_node,notemplate)
+	if not notemplate then
+		return templateengine.applytemplate(_node, 3)
+	end
+	local t = {}
+	if _node.shortdescription and _node.shortdescription ~= "" then table.insert(t,_node.shortdescription) end
+	if _node.description and _node.description ~= "" then table.insert(t,_node.description) end
+	if #t ~= 0 then return string.format("<div style='white-space:pre'>%s</div>",table.concat(t,"\n") ) end
+	return ""
+end
+
+-- compute documentation of a file, nil when file is not a module
+function M._filedescription(_file)
+	if not _file.name then return nil end
+
+	-- Enable links just for module file objects
+	enablelinks()
+	local description = templateengine.applytemplate(_file, 1)
+	disablelinks()
+	return description
+end
 
+-- create item
+function M._item(_item,notemplate,handledexpr)
 	local jitem = javaapimodelfactory.newitem(_item.name,
-		description,
+		M._description(_item,notemplate),
 		_item.sourcerange.min - 1,
 		_item.sourcerange.max,
 		M._typeref(_item.type,handledexpr)
@@ -115,19 +129,8 @@ function M._typedef(_typedef,notemplate, handledexpr)
 	-- Dealing with records
 	if _typedef.tag == "recordtypedef" then
 
-		-- manage description
-		local description = ""
-		if notemplate then
-			local t = {}
-			if _typedef.shortdescription and _typedef.shortdescription ~= "" then table.insert(t,_typedef.shortdescription) end
-			if _typedef.description and _typedef.description ~= "" then table.insert(t,_typedef.description) end
-			if #t ~= 0 then description = string.format("<div style='white-space:pre'>%s</div>",table.concat(t,"\n") ) end
-		else
-			description = templateengine.applytemplate(_typedef, 3)
-		end
-	
 		jtypedef = javaapimodelfactory.newrecordtypedef(_typedef.name,
-		    description,
+		    M._description(_typedef,notemplate),
 			_typedef.sourcerange.min - 1,
 			_typedef.sourcerange.max
 		)
@@ -164,15 +167,7 @@ function M._file(_file)
 
 	local handledexpr = {}
 
-	-- Enable links just for module file objects 
-	enablelinks()
-	local jfile 
-	if _file.name then
-		jfile = javaapimodelfactory.newfileapi(templateengine.applytemplate(_file, 1))
-	else
-		jfile = javaapimodelfactory.newfileapi()
-	end
-	disablelinks()
+	local jfile = javaapimodelfactory.newfileapi(M._filedescription(_file))
 
 	-- Adding global variables
 	for _, _item in pairs(_file.globalvars) do
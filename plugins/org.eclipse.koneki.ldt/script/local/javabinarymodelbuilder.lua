@@ -0,0 +1,417 @@
+--------------------------------------------------------------------------------
+--  Copyright (c) 2013 Sierra Wireless.
+--  All rights reserved. This program and the accompanying materials
+--  are made available under the terms of the Eclipse Public License v1.0
+--  which accompanies this distribution, and is available at
+--  http://www.eclipse.org/legal/epl-v10.html
+--
+--  Contributors:
+--       Sierra Wireless - initial API and implementation
+--------------------------------------------------------------------------------
+
+--
+-- Encode api and internal models in the binary layout described in Java class
+-- org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelConstants.
+--
+-- The whole model is handed to Java as a single string, instead of one Java
+-- call per node. Produced model is the same as the one javaapimodelbuilder and
+-- javainternalmodelbuilder create.
+--
+local M = {}
+local javaapimodelbuilder = require 'javaapimodelbuilder'
+
+-- Node tags, keep them in sync with BinaryModelConstants
+local NULL             = 0
+local REF              = 1
+local BLOCK            = 2
+local IDENTIFIER       = 3
+local INDEX            = 4
+local CALL             = 5
+local INVOKE           = 6
+local ITEM             = 7
+local RECORD_TYPEDEF   = 8
+local FUNCTION_TYPEDEF = 9
+
+-- Type reference tags, keep them in sync with BinaryModelConstants
+local TYPEREF_NULL      = 0
+local TYPEREF_EXTERNAL  = 1
+local TYPEREF_INTERNAL  = 2
+local TYPEREF_MODULE    = 3
+local TYPEREF_EXPR      = 4
+local TYPEREF_PRIMITIVE = 5
+local TYPEREF_INLINE    = 6
+
+--------------------------------------
+-- Integers encoding
+local INT_FINAL = 0x21
+local INT_MORE  = 0x41
+local finalgroups, moregroups = {}, {}
+for bits = 0, 31 do
+	finalgroups[bits] = string.char(INT_FINAL + bits)
+	moregroups[bits]  = string.char(INT_MORE  + bits)
+end
+
+-- Encoded form of small integers, they are the vast majority
+local encodedints = {}
+
+local function encodeint(value)
+	local encoded = encodedints[value]
+	if encoded then return encoded end
+
+	-- Zigzag, so that small negative values stay short
+	local bits = value >= 0 and value * 2 or -value * 2 - 1
+	local groups = {}
+	while bits > 31 do
+		local group = bits % 32
+		table.insert(groups, moregroups[group])
+		bits = (bits - group) / 32
+	end
+	table.insert(groups, finalgroups[bits])
+	encoded = table.concat(groups)
+	if value >= -1024 and value < 1024 then encodedints[value] = encoded end
+	return encoded
+end
+
+--------------------------------------
+-- Strings escaping
+--
+-- Java reads the encoded model as modified UTF-8, NUL, DEL and non ASCII
+-- bytes are escaped so that sources in any encoding make it through.
+local STRING_ESCAPE       = 0x7F
+local STRING_ESCAPE_DIGIT = 0x30
+local escapedbytes = {}
+for byte = 0, 255 do
+	if byte == 0 or byte >= STRING_ESCAPE then
+		escapedbytes[string.char(byte)] = string.char(STRING_ESCAPE,
+			STRING_ESCAPE_DIGIT + math.floor(byte / 16), STRING_ESCAPE_DIGIT + byte % 16)
+	end
+end
+
+--------------------------------------
+-- Encoder state
+local E = {}
+E.__index = E
+
+local function newencoder()
+	return setmetatable({
+		buffer    = {},
+		size      = 0,
+		-- quantity of nodes Java reader will have registered
+		nodecount = 0,
+		-- index of already written expressions
+		indexes   = {},
+		-- expressions written while walking blocks content
+		handled   = {},
+		-- expressions which will be written while walking blocks content
+		reachable = {}
+	}, E)
+end
+
+function E:raw(s)
+	local size = self.size + 1
+	self.buffer[size] = s
+	self.size = size
+end
+
+function E:int(value)
+	self:raw(encodeint(value))
+end
+
+-- Reserve room for an integer known later, fill it with E:fill
+function E:reserve()
+	self:raw(false)
+	return self.size
+end
+
+function E:fill(slot, value)
+	self.buffer[slot] = encodeint(value)
+end
+
+function E:string(s)
+	if s == nil then
+		self:int(-1)
+		return
+	end
+	s = tostring(s):gsub('[%z\127-\255]', escapedbytes)
+	self:int(#s)
+	self:raw(s)
+end
+
+function E:range(sourcerange)
+	self:int(sourcerange.min - 1)
+	self:int(sourcerange.max)
+end
+
+-- Give node the index Java reader will give it
+function E:register(node, tag)
+	self:int(tag)
+	if node then self.indexes[node] = self.nodecount end
+	self.nodecount = self.nodecount + 1
+end
+
+-- Write a reference when node is already written
+function E:ref(node)
+	local index = self.indexes[node]
+	if not index then return false end
+	self:int(REF)
+	self:int(index)
+	return true
+end
+
+--------------------------------------
+-- API model
+function E:typeref(_type, expression)
+	if not _type then
+		self:int(TYPEREF_NULL)
+		return
+	end
+	local tag = _type.tag
+	if tag == "externaltyperef" then
+		self:int(TYPEREF_EXTERNAL)
+		self:string(_type.modulename)
+		self:string(_type.typename)
+	elseif tag == "internaltyperef" then
+		self:int(TYPEREF_INTERNAL)
+		self:string(_type.typename)
+	elseif tag == "moduletyperef" then
+		self:int(TYPEREF_MODULE)
+		self:string(_type.modulename)
+		self:int(_type.returnposition)
+	elseif tag == "exprtyperef" then
+		self:int(TYPEREF_EXPR)
+		self:int(_type.returnposition)
+		-- Only expressions already converted are linked, as javaapimodelbuilder does
+		if not (expression and self.handled[_type.expression] and self:ref(_type.expression)) then
+			self:int(NULL)
+		end
+	elseif tag == "primitivetyperef" then
+		self:int(TYPEREF_PRIMITIVE)
+		self:string(_type.typename)
+	elseif tag == "inlinetyperef" then
+		self:int(TYPEREF_INLINE)
+		self:typedef(_type.def, true)
+	else
+		self:int(TYPEREF_NULL)
+	end
+end
+
+-- occurrences is the set of identifiers which may be referenced, nil when item has no occurrences
+function E:item(_item, notemplate, occurrences)
+	self:register(nil, ITEM)
+	self:string(_item.name)
+	self:string(javaapimodelbuilder._description(_item, notemplate))
+	self:range(_item.sourcerange)
+	self:typeref(_item.type, true)
+
+	local count = self:reserve()
+	local n = 0
+	if occurrences then
+		for _, _occurrence in ipairs(_item.occurrences) do
+			if occurrences[_occurrence] then
+				-- Identifier may be written before it is met in block content
+				if not self:ref(_occurrence) then
+					self:register(_occurrence, IDENTIFIER)
+					self:range(_occurrence.sourcerange)
+				end
+				n = n + 1
+			end
+		end
+	end
+	self:fill(count, n)
+end
+
+function E:returns(_returns)
+	self:int(#_returns)
+	for _, _return in ipairs(_returns) do
+		self:int(#_return.types)
+		for _, _type in ipairs(_return.types) do
+			self:typeref(_type)
+		end
+	end
+end
+
+function E:typedef(_typedef, notemplate)
+	if not _typedef then
+		self:int(NULL)
+	elseif _typedef.tag == "recordtypedef" then
+		self:register(nil, RECORD_TYPEDEF)
+		self:string(_typedef.name)
+		self:string(javaapimodelbuilder._description(_typedef, notemplate))
+		self:range(_typedef.sourcerange)
+
+		local count = self:reserve()
+		local n = 0
+		for _, _item in pairs(_typedef.fields) do
+			self:item(_item, notemplate)
+			n = n + 1
+		end
+		self:fill(count, n)
+	elseif _typedef.tag == "functiontypedef" then
+		-- Functions have neither documentation nor position on Java side
+		self:register(nil, FUNCTION_TYPEDEF)
+		self:string(nil)
+		self:int(-1)
+		self:int(-1)
+
+		self:int(#_typedef.params)
+		for _, _param in ipairs(_typedef.params) do
+			self:string(_param.name)
+			self:typeref(_param.type)
+			self:string(_param.description)
+		end
+		self:returns(_typedef.returns)
+	else
+		self:int(NULL)
+	end
+end
+
+function E:file(_file)
+	self:string(javaapimodelbuilder._filedescription(_file))
+
+	local count = self:reserve()
+	local n = 0
+	for _, _typedef in pairs(_file.types) do
+		self:string(_typedef.name)
+		self:typedef(_typedef, false)
+		n = n + 1
+	end
+	self:fill(count, n)
+
+	count = self:reserve()
+	n = 0
+	for _, _item in pairs(_file.globalvars) do
+		self:item(_item, false, self.reachable)
+		n = n + 1
+	end
+	self:fill(count, n)
+
+	self:returns(_file.returns)
+end
+
+--------------------------------------
+-- Internal model
+
+-- Collect expressions E:expression will write
+local function collect(_expr, reachable)
+	local tag = _expr.tag
+	if tag == "MIdentifier" then
+		reachable[_expr] = true
+	elseif tag == "MIndex" then
+		reachable[_expr] = true
+		collect(_expr.left, reachable)
+	elseif tag == "MCall" then
+		reachable[_expr] = true
+		collect(_expr.func, reachable)
+	elseif tag == "MInvoke" then
+		reachable[_expr] = true
+		collect(_expr.record, reachable)
+	elseif tag == "MBlock" then
+		for _, _child in pairs(_expr.content) do
+			collect(_child, reachable)
+		end
+	end
+end
+
+function E:expression(_expr)
+	local tag = _expr.tag
+	if tag == "MBlock" then
+		self:block(_expr)
+		return
+	elseif tag ~= "MIdentifier" and tag ~= "MIndex" and tag ~= "MCall" and tag ~= "MInvoke" then
+		self:int(NULL)
+		return
+	end
+
+	self.handled[_expr] = true
+	if self:ref(_expr) then return end
+	if tag == "MIdentifier" then
+		self:register(_expr, IDENTIFIER)
+		self:range(_expr.sourcerange)
+	elseif tag == "MIndex" then
+		self:register(_expr, INDEX)
+		self:range(_expr.sourcerange)
+		self:expression(_expr.left)
+		self:string(_expr.right)
+	elseif tag == "MCall" then
+		self:register(_expr, CALL)
+		self:range(_expr.sourcerange)
+		self:expression(_expr.func)
+	else
+		self:register(_expr, INVOKE)
+		self:range(_expr.sourcerange)
+		self:string(_expr.functionname)
+		self:expression(_expr.record)
+	end
+end
+
+function E:block(_block)
+	self:register(nil, BLOCK)
+	self:range(_block.sourcerange)
+
+	local count = self:reserve()
+	local n = 0
+	for _, _expr in pairs(_block.content) do
+		self:expression(_expr)
+		n = n + 1
+	end
+	self:fill(count, n)
+
+	-- Local variables occurrences are the ones of block content
+	count = self:reserve()
+	n = 0
+	for _, _localvar in pairs(_block.localvars) do
+		self:item(_localvar.item, true, self.handled)
+		self:int(_localvar.scope.min - 1)
+		self:int(_localvar.scope.max)
+		n = n + 1
+	end
+	self:fill(count, n)
+end
+
+function E:internalcontent(_internalcontent)
+	self:block(_internalcontent.content)
+
+	self:int(#_internalcontent.unknownglobalvars)
+	for _, _item in ipairs(_internalcontent.unknownglobalvars) do
+		self:item(_item, true, self.handled)
+	end
+end
+
+--------------------------------------
+-- Public API
+
+---
+-- Encode models of a valid source
+--
+-- @param	sourcelength Length of parsed source
+-- @param	_file API model
+-- @param	_internalcontent Internal model
+-- @return	string, encoded LuaSourceRoot
+function M.encode(sourcelength, _file, _internalcontent)
+	local encoder = newencoder()
+	collect(_internalcontent.content, encoder.reachable)
+
+	encoder:int(sourcelength)
+	encoder:int(0)
+	encoder:file(_file)
+	encoder:internalcontent(_internalcontent)
+	return table.concat(encoder.buffer)
+end
+
+---
+-- Encode a source which contains a problem
+--
+-- @return	string, encoded LuaSourceRoot
+function M.encodeproblem(sourcelength, line, column, startoffset, endoffset, message)
+	local encoder = newencoder()
+	encoder:int(sourcelength)
+	encoder:int(1)
+	encoder:int(line)
+	encoder:int(column)
+	encoder:int(startoffset)
+	encoder:int(endoffset)
+	encoder:string(message)
+	return table.concat(encoder.buffer)
+end
+
+return M
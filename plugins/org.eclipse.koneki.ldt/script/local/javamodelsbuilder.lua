@@ -15,51 +15,84 @@ local compiler = require 'metalua.compiler'
 local mlc = compiler.new()
 
 local javamodelfactory = require 'javamodelfactory'
+local incrementalparser = require 'incrementalparser'
 
 -- Just redefining classic print, as there is a flush problem calling it from Java
 local print = function(...) print(...) io.flush() end
 
 local M = {}
 
----
--- Build Java Model from source code
 --
--- @param	source Code to parse
--- @return	LuaSourceRoot, DLTK node, root of DLTK AST
-function M.build(source, modulename)
-	-- create root object
-	local root = javamodelfactory.newsourceroot(#source)
-	
-	-- manage shebang
-	if source then source = source:gsub("^(#.-\n)", function (s) return string.rep(' ',string.len(s)) end) end
-	-- check for errors
+-- Compute problem from a Metalua parse error
+--
+-- Metalua parse errors look like "line 4, char 3: message\n>>> source line\n>>>    ^"
+--
+-- @return	problem table, nil when error does not come from Metalua parser
+local function metaluaproblem(source, err)
+	local line, column, message = string.match(tostring(err), "line (%-?%d+), char (%-?%d+): ([^\n]*)")
+	if not line then return nil end
+	line, column = tonumber(line), tonumber(column)
+	if line < 1 then
+		return {line = 0, column = -1, startoffset = -1, endoffset = -1, message = message}
+	end
+
+	-- TODO ECLIPSE 411238
+	-- we must calculate offset because DLTK does not support 'line' positionning
+	local _, linestart = string.find(source,string.rep("[^\n]*\n",line-1))
+	linestart = linestart or 0
+	local offset = math.min(math.max(linestart + column - 1, linestart), #source)
+	return {
+		line = line - 1,
+		column = column - 1,
+		startoffset = offset,
+		endoffset = math.min(offset + 1, #source),
+		message = message
+	}
+end
+
+--
+-- Compute problem with Lua compiler, when Metalua failed for an other reason than a syntax error
+--
+-- @return	problem table
+local function luaproblem(source)
 	local f, err = loadstring(source,'source_to_check')
-	if not f then
-		local line, err = string.match(err,"%[string \"source_to_check\"%]:(%d+):(.*)")
-		err = err or 'Unable to determine error'
-		line = line and tonumber(line)-1 or 0
-		
-		-- TODO ECLIPSE 411238
-		-- we must calculate offset because DLTK does not support 'line' positionning
-		local _, endoffset = string.find(source,string.rep("[^\n]*\n",line))
-		
-		-- calculate the start of some errors
-		-- NOT USED FOR NOW
---		 local linestart = string.match(err,"%(to close .* at line (%d+)%)") 
---		 if linestart then
---			local _, startoffset = string.find(source,string.rep("[^\n]*\n",linestart-1))
---			javamodelfactory.setproblem(root, line , -1, startoffset, endoffset, err)
---		else
---			javamodelfactory.setproblem(root, line , -1, -1, endoffset, err)
---		end
-		javamodelfactory.setproblem(root, line , -1, -1, endoffset, err)
-		return root
+	if f then
+		return {line = 0, column = -1, startoffset = -1, endoffset = -1, message = 'Unable to determine error'}
+	end
+	local line, err = string.match(err,"%[string \"source_to_check\"%]:(%d+):(.*)")
+	err = err or 'Unable to determine error'
+	line = line and tonumber(line)-1 or 0
+
+	-- TODO ECLIPSE 411238
+	-- we must calculate offset because DLTK does not support 'line' positionning
+	local _, endoffset = string.find(source,string.rep("[^\n]*\n",line))
+	return {line = line, column = -1, startoffset = -1, endoffset = endoffset or -1, message = err}
+end
+
+--
+-- Check source and build its api and internal models
+--
+-- Source is parsed once, syntax errors are reported by Metalua parser itself.
+-- When a key is given, only statements changed since last build of this key are parsed.
+--
+-- @return	api model, internal model
+-- @return	nil, problem table with line, column, startoffset, endoffset and message fields
+local function buildmodels(source, modulename, key)
+	-- manage shebang
+	-- newline is kept, so that lines of reported problems are not shifted
+	if source then source = source:gsub("^(#.-)\n", function (s) return string.rep(' ',string.len(s)) .. '\n' end) end
+
+	-- build AST, checking for errors at the same time
+	local ok, ast
+	if key then
+		ok, ast = pcall(incrementalparser.parse, mlc, source, key)
+	else
+		ok, ast = pcall(mlc.src_to_ast, mlc, source)
+	end
+	if not ok then
+		return nil, metaluaproblem(source, ast) or luaproblem(source)
 	end
-	
-	
-	-- if no errors, check AST
-	local ast = mlc:src_to_ast( source )
-	
+
 	-- Create api model
 	local apimodelbuilder = require 'models.apimodelbuilder'
 	local _file, comment2apiobj = apimodelbuilder.createmoduleapi(ast,modulename)
@@ -68,6 +101,26 @@ function M.build(source, modulename)
 	local internalmodelbuilder = require "models.internalmodelbuilder"
 	local _internalcontent = internalmodelbuilder.createinternalcontent(ast,_file,comment2apiobj,modulename)
 
+	return _file, _internalcontent
+end
+
+---
+-- Build Java Model from source code
+--
+-- @param	source Code to parse
+-- @param	key Identifies successive versions of an edited source, nil to parse it fully
+-- @return	LuaSourceRoot, DLTK node, root of DLTK AST
+function M.build(source, modulename, key)
+	-- create root object
+	local root = javamodelfactory.newsourceroot(#source)
+
+	local _file, _internalcontent = buildmodels(source, modulename, key)
+	if not _file then
+		local problem = _internalcontent
+		javamodelfactory.setproblem(root, problem.line, problem.column, problem.startoffset, problem.endoffset, problem.message)
+		return root
+	end
+
 	-- Converting api model to java
 	local javaapimodelbuilder = require 'javaapimodelbuilder'
 	local jfile, handledexpr = javaapimodelbuilder._file(_file)
@@ -79,8 +132,27 @@ function M.build(source, modulename)
 	-- Append information from documentation
 	javamodelfactory.addcontent(root,jfile,jinternalcontent)
 
-	local handledcomments={}
 	return root
 end
 
+---
+-- Build Java Model from source code, encoded as a single string
+--
+-- Same model as M.build, but Java objects are created by Java side from
+-- the returned string, sparing one Java call per model node.
+--
+-- @param	source Code to parse
+-- @param	key Identifies successive versions of an edited source, nil to parse it fully
+-- @return	string, LuaSourceRoot encoded as described in BinaryModelConstants Java class
+function M.buildbinary(source, modulename, key)
+	local javabinarymodelbuilder = require 'javabinarymodelbuilder'
+
+	local _file, _internalcontent = buildmodels(source, modulename, key)
+	if not _file then
+		local problem = _internalcontent
+		return javabinarymodelbuilder.encodeproblem(#source, problem.line, problem.column, problem.startoffset, problem.endoffset, problem.message)
+	end
+	return javabinarymodelbuilder.encode(#source, _file, _internalcontent)
+end
+
 return M
@@ -43,6 +43,7 @@ import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.dltk.core.ModelException;
 import org.eclipse.dltk.core.environment.EnvironmentPathUtils;
 import org.eclipse.koneki.ldt.core.internal.Activator;
+import org.eclipse.koneki.ldt.core.internal.ModuleNameIndex;
 import org.eclipse.koneki.ldt.core.internal.buildpath.LuaExecutionEnvironmentBuildpathUtil;
 
 /**
@@ -175,43 +176,16 @@ public final class LuaUtils {
 	 * @return the {@link IModuleSource} from full name with module dot syntax
 	 */
 	public static IModuleSource getModuleSource(final String name, final IScriptProject project) {
-		if (project == null && name == null || name.isEmpty())
+		if (project == null || name == null || name.isEmpty())
 			return null;
 
-		// search in all source path.
-		IProjectFragment[] allProjectFragments;
+		// search in index of all source path.
 		try {
-			allProjectFragments = project.getAllProjectFragments();
-			for (final IProjectFragment projectFragment : allProjectFragments) {
-				final IModuleSource moduleSource = getModuleSource(name, projectFragment);
-				if (moduleSource != null)
-					return moduleSource;
-			}
+			return ModuleNameIndex.getModuleSource(name, project);
 		} catch (final ModelException e) {
 			Activator.logError(MessageFormat.format("Unable to find module: {0}.", name), e); //$NON-NLS-1$
 			return null;
 		}
-		return null;
-	}
-
-	/*
-	 * @return the {@link IModuleSource} from full name with module dot syntax
-	 */
-	private static IModuleSource getModuleSource(final String name, final IParent parent) throws ModelException {
-		final IModelElement[] children = parent.getChildren();
-		for (final IModelElement child : children) {
-			if (child instanceof IModuleSource) {
-				if (name.equals(getModuleFullName((IModuleSource) child))) {
-					return (IModuleSource) child;
-				}
-			} else if (child instanceof IParent) {
-				final IModuleSource moduleSource = getModuleSource(name, (IParent) child);
-				if (moduleSource != null)
-					return moduleSource;
-			}
-
-		}
-		return null;
 	}
 
 	/**
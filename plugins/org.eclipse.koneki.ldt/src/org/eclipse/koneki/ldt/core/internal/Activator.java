@@ -10,9 +10,13 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.core.internal;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.LuaSourceParser;
+import org.eclipse.koneki.ldt.core.internal.buildpath.LuaExecutionEnvironmentManager;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -40,6 +44,18 @@ public class Activator extends Plugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+
+		// Indexes of execution environments installed by a previous version are outdated
+		final Job indexJob = new Job("Index execution environment APIs") { //$NON-NLS-1$
+			@Override
+			protected IStatus run(final IProgressMonitor monitor) {
+				LuaExecutionEnvironmentManager.updateAPIIndexes();
+				return Status.OK_STATUS;
+			}
+		};
+		indexJob.setSystem(true);
+		indexJob.setPriority(Job.DECORATE);
+		indexJob.schedule();
 	}
 
 	/*
@@ -48,6 +64,7 @@ public class Activator extends Plugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		LuaSourceParser.dispose();
 		plugin = null;
 		super.stop(context);
 	}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.dltk.compiler.env.IModuleSource;
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.IParent;
+import org.eclipse.dltk.core.IProjectFragment;
+import org.eclipse.dltk.core.IScriptProject;
+import org.eclipse.dltk.core.ModelException;
+import org.eclipse.koneki.ldt.core.LuaUtils;
+
+/**
+ * Modules of script projects, indexed by full name with module dot syntax.
+ *
+ * Index of a project is built on first lookup, by walking all its project fragments once. When several modules have the same name, the first one
+ * found in buildpath order is kept. Project fragments of a project can come from other projects, so indexes are all dropped when a module, a
+ * folder or a buildpath is added, removed or moved. Edition of modules does not change their names and keeps indexes.
+ */
+public final class ModuleNameIndex {
+
+	/** Flags of a changed container which do not affect module names */
+	private static final int CONTENT_FLAGS = IModelElementDelta.F_CHILDREN | IModelElementDelta.F_CONTENT | IModelElementDelta.F_FINE_GRAINED
+			| IModelElementDelta.F_PRIMARY_RESOURCE | IModelElementDelta.F_PRIMARY_WORKING_COPY;
+
+	private static final Map<IScriptProject, Map<String, IModuleSource>> INDEXES = new ConcurrentHashMap<IScriptProject, Map<String, IModuleSource>>();
+
+	/** Incremented when indexes are dropped, so that an index built meanwhile is not kept */
+	private static volatile int generation;
+
+	private static IElementChangedListener changedListener = new IElementChangedListener() {
+		public void elementChanged(ElementChangedEvent event) {
+			if (!INDEXES.isEmpty() && isStructural(event.getDelta()))
+				clear();
+		}
+
+		private boolean isStructural(IModelElementDelta delta) {
+			switch (delta.getElement().getElementType()) {
+			case IModelElement.SOURCE_MODULE:
+				// working copies are added and removed when editors open and close
+				return delta.getKind() != IModelElementDelta.CHANGED && (delta.getFlags() & IModelElementDelta.F_PRIMARY_WORKING_COPY) == 0;
+			case IModelElement.SCRIPT_MODEL:
+			case IModelElement.SCRIPT_PROJECT:
+			case IModelElement.PROJECT_FRAGMENT:
+			case IModelElement.SCRIPT_FOLDER:
+				break;
+			default:
+				// members of modules
+				return false;
+			}
+			if (delta.getKind() != IModelElementDelta.CHANGED || (delta.getFlags() & ~CONTENT_FLAGS) != 0)
+				return true;
+
+			for (IModelElementDelta child : delta.getAffectedChildren()) {
+				if (isStructural(child))
+					return true;
+			}
+			return false;
+		}
+	};
+	static {
+		DLTKCore.addElementChangedListener(changedListener);
+	}
+
+	private ModuleNameIndex() {
+	}
+
+	/**
+	 * @return the {@link IModuleSource} from full name with module dot syntax, null if there is none
+	 */
+	public static IModuleSource getModuleSource(final String name, final IScriptProject project) throws ModelException {
+		Map<String, IModuleSource> index = INDEXES.get(project);
+		if (index == null) {
+			final int builtGeneration = generation;
+			index = build(project);
+			synchronized (ModuleNameIndex.class) {
+				if (builtGeneration == generation)
+					INDEXES.put(project, index);
+			}
+		}
+		return index.get(name);
+	}
+
+	/**
+	 * Drop all indexes, they are built again on next lookup.
+	 */
+	public static void clear() {
+		synchronized (ModuleNameIndex.class) {
+			generation++;
+			INDEXES.clear();
+		}
+	}
+
+	private static Map<String, IModuleSource> build(final IScriptProject project) throws ModelException {
+		final Map<String, IModuleSource> index = new HashMap<String, IModuleSource>();
+		for (final IProjectFragment projectFragment : project.getAllProjectFragments()) {
+			collect(projectFragment, index);
+		}
+		return index;
+	}
+
+	private static void collect(final IParent parent, final Map<String, IModuleSource> index) throws ModelException {
+		for (final IModelElement child : parent.getChildren()) {
+			if (child instanceof IModuleSource) {
+				final String name = LuaUtils.getModuleFullName((IModuleSource) child);
+				if (!index.containsKey(name))
+					index.put(name, (IModuleSource) child);
+			} else if (child instanceof IParent) {
+				collect((IParent) child, index);
+			}
+		}
+	}
+}
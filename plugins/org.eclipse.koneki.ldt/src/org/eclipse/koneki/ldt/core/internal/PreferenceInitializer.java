@@ -17,6 +17,9 @@ import org.eclipse.ui.preferences.ScopedPreferenceStore;
 public class PreferenceInitializer extends AbstractPreferenceInitializer {
 
 	public static final String EE_DEFAULT_ID = "EE__default_id"; //$NON-NLS-1$
+	public static final String PARSER_POOL_SIZE = "parser_pool_size"; //$NON-NLS-1$
+	public static final String PARSER_BINARY_TRANSFER = "parser_binary_transfer"; //$NON-NLS-1$
+	public static final String PARSER_INCREMENTAL = "parser_incremental"; //$NON-NLS-1$
 
 	@Override
 	public void initializeDefaultPreferences() {
@@ -24,5 +27,8 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 				.getPreferenceQualifier());
 
 		preferenceStore.setDefault(EE_DEFAULT_ID, "lua-5.1"); //$NON-NLS-1$
+		preferenceStore.setDefault(PARSER_POOL_SIZE, Runtime.getRuntime().availableProcessors());
+		preferenceStore.setDefault(PARSER_BINARY_TRANSFER, true);
+		preferenceStore.setDefault(PARSER_INCREMENTAL, true);
 	}
 }
@@ -30,7 +30,6 @@ import org.eclipse.koneki.ldt.core.internal.ast.models.api.TypeRef;
 import org.eclipse.koneki.ldt.core.internal.ast.models.file.Identifier;
 import org.eclipse.koneki.ldt.core.internal.ast.models.file.LuaExpression;
 
-import com.cforcoding.jmd.MarkDown;
 import com.naef.jnlua.LuaState;
 import com.naef.jnlua.NamedJavaFunction;
 
@@ -473,18 +472,15 @@ public final class APIModelFactory {
 		};
 	}
 
+	/**
+	 * Markdown is rendered only when documentation is displayed, see {@link MarkdownDocumentation}.
+	 */
 	private static NamedJavaFunction markdown() {
 		return new NamedJavaFunction() {
-			private MarkDown markdown = new MarkDown();
-
 			@Override
 			public int invoke(LuaState l) {
 				String input = l.checkString(1);
-
-				String result = markdown.transform(input);
-				l.pushString(result);
-				// l.pushString(input);
-
+				l.pushString(MarkdownDocumentation.defer(input));
 				return 1;
 			}
 
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.models;
+
+/**
+ * Tags of the binary representation of a {@link org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot}.
+ *
+ * Integers are zigzag encoded then written as groups of 5 bits, least significant first. A group is written as <code>INT_FINAL + bits</code> when it
+ * is the last one, <code>INT_MORE + bits</code> otherwise. Strings are an integer byte length followed by modified UTF-8 bytes, as JNI encodes
+ * them, a negative length stands for <code>null</code>. Lua strings may hold any byte, for instance when source is not UTF-8: NUL, DEL and non ASCII
+ * bytes are then written as {@link #STRING_ESCAPE} followed by two {@link #STRING_ESCAPE_DIGIT} based hexadecimal digits. This way, an encoded
+ * model never contains a NUL byte and is valid modified UTF-8: Lua is able to hand it to Java as a plain string.
+ *
+ * Nodes are written in pre-order, each node gets an index the first time it is written, later occurrences of the same node are written as a
+ * {@link #REF} followed by this index.
+ */
+public final class BinaryModelConstants {
+
+	/** Increment each time the layout below changes */
+	public static final int FORMAT_VERSION = 3;
+
+	// Integer encoding
+	public static final int INT_FINAL = 0x21;
+	public static final int INT_MORE = 0x41;
+	public static final int INT_GROUP_BITS = 5;
+	public static final int INT_GROUP_MASK = 0x1F;
+
+	// String bytes escaping
+	public static final int STRING_ESCAPE = 0x7F;
+	public static final int STRING_ESCAPE_DIGIT = 0x30;
+
+	// Node tags
+	public static final int NULL = 0;
+	public static final int REF = 1;
+	public static final int BLOCK = 2;
+	public static final int IDENTIFIER = 3;
+	public static final int INDEX = 4;
+	public static final int CALL = 5;
+	public static final int INVOKE = 6;
+	public static final int ITEM = 7;
+	public static final int RECORD_TYPEDEF = 8;
+	public static final int FUNCTION_TYPEDEF = 9;
+
+	// Type reference tags
+	public static final int TYPEREF_NULL = 0;
+	public static final int TYPEREF_EXTERNAL = 1;
+	public static final int TYPEREF_INTERNAL = 2;
+	public static final int TYPEREF_MODULE = 3;
+	public static final int TYPEREF_EXPR = 4;
+	public static final int TYPEREF_PRIMITIVE = 5;
+	public static final int TYPEREF_INLINE = 6;
+	public static final int TYPEREF_LAZY = 7;
+
+	private BinaryModelConstants() {
+	}
+}
@@ -0,0 +1,383 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.models;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.ExprTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.ExternalTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.FunctionTypeDef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.InlineTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.InternalTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Item;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.LazyTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.LuaFileAPI;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.ModuleTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Parameter;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.PrimitiveTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.RecordTypeDef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Return;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.TypeDef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.TypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaASTNode;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Block;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Call;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Identifier;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Index;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Invoke;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LocalVar;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LuaExpression;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LuaInternalContent;
+
+/**
+ * Materializes a {@link LuaSourceRoot} from the layout described in {@link BinaryModelConstants}.
+ */
+public final class BinaryModelReader {
+
+	private final byte[] data;
+	private final int limit;
+	private int position;
+
+	/** Already read nodes, by index */
+	private final List<LuaASTNode> read = new ArrayList<LuaASTNode>();
+
+	private BinaryModelReader(final byte[] bytes, final int offset, final int length) {
+		data = bytes;
+		position = offset;
+		limit = offset + length;
+	}
+
+	public static LuaSourceRoot read(final byte[] bytes) throws IOException {
+		return read(bytes, 0, bytes.length);
+	}
+
+	public static LuaSourceRoot read(final byte[] bytes, final int offset, final int length) throws IOException {
+		final BinaryModelReader reader = new BinaryModelReader(bytes, offset, length);
+		final LuaSourceRoot root = reader.readSourceRoot();
+		if (reader.position != reader.limit)
+			throw new IOException("Unexpected data after model end."); //$NON-NLS-1$
+		return root;
+	}
+
+	/**
+	 * Model encoded on Lua side is handed as a string, it is turned back to the bytes Lua handled.
+	 */
+	public static LuaSourceRoot read(final String encoded) throws IOException {
+		final int length = encoded.length();
+		final byte[] bytes = new byte[length * 3];
+		int byteLength = 0;
+		for (int i = 0; i < length; i++) {
+			final char c = encoded.charAt(i);
+			if (c != 0 && c < 0x80) {
+				bytes[byteLength++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[byteLength++] = (byte) (0xC0 | (c >> 6));
+				bytes[byteLength++] = (byte) (0x80 | (c & 0x3F));
+			} else {
+				bytes[byteLength++] = (byte) (0xE0 | (c >> 12));
+				bytes[byteLength++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[byteLength++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return read(bytes, 0, byteLength);
+	}
+
+	private LuaSourceRoot readSourceRoot() throws IOException {
+		final LuaSourceRoot root = new LuaSourceRoot(readInt(), true);
+
+		// Problem
+		if (readInt() != 0) {
+			final int line = readInt();
+			final int column = readInt();
+			final int start = readInt();
+			final int end = readInt();
+			root.setProblem(line, column, start, end, readString());
+			return root;
+		}
+
+		root.setLuaFileApi(readFileAPI());
+		root.setInternalContent(readInternalContent());
+		return root;
+	}
+
+	private LuaFileAPI readFileAPI() throws IOException {
+		final LuaFileAPI fileAPI = new LuaFileAPI();
+		fileAPI.setDocumentation(readString());
+
+		final int typeCount = readInt();
+		for (int i = 0; i < typeCount; i++) {
+			final String typeName = readString();
+			fileAPI.addType(typeName, readNode(TypeDef.class));
+		}
+
+		final int globalVarCount = readInt();
+		for (int i = 0; i < globalVarCount; i++) {
+			fileAPI.addGlobalVar(readNode(Item.class));
+		}
+
+		for (final Return ret : readReturns()) {
+			fileAPI.addReturns(ret);
+		}
+		return fileAPI;
+	}
+
+	private LuaInternalContent readInternalContent() throws IOException {
+		final LuaInternalContent internalContent = new LuaInternalContent();
+		internalContent.setContent(readNode(Block.class));
+
+		final int unknownGlobalVarCount = readInt();
+		for (int i = 0; i < unknownGlobalVarCount; i++) {
+			internalContent.addUnknownGlobalVar(readNode(Item.class));
+		}
+		return internalContent;
+	}
+
+	private <T extends LuaASTNode> T readNode(final Class<T> type) throws IOException {
+		final LuaASTNode node = readNode();
+		if (node != null && !type.isInstance(node))
+			throw new IOException("Unexpected node " + node.getClass().getName() + ", expecting " + type.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+		return type.cast(node);
+	}
+
+	private LuaASTNode readNode() throws IOException {
+		final int tag = readInt();
+		switch (tag) {
+		case BinaryModelConstants.NULL:
+			return null;
+		case BinaryModelConstants.REF:
+			final int index = readInt();
+			if (index < 0 || index >= read.size())
+				throw new IOException("Invalid node reference " + index); //$NON-NLS-1$
+			return read.get(index);
+		case BinaryModelConstants.BLOCK:
+			return readBlock(register(new Block()));
+		case BinaryModelConstants.IDENTIFIER:
+			return readRange(register(new Identifier()));
+		case BinaryModelConstants.INDEX:
+			final Index indexNode = readRange(register(new Index()));
+			indexNode.setLeft(readNode(LuaExpression.class));
+			indexNode.setRight(readString());
+			return indexNode;
+		case BinaryModelConstants.CALL:
+			final Call call = readRange(register(new Call()));
+			call.setFunction(readNode(LuaExpression.class));
+			return call;
+		case BinaryModelConstants.INVOKE:
+			final Invoke invoke = readRange(register(new Invoke()));
+			invoke.setFunctionName(readString());
+			invoke.setRecord(readNode(LuaExpression.class));
+			return invoke;
+		case BinaryModelConstants.ITEM:
+			return readItem(register(new Item()));
+		case BinaryModelConstants.RECORD_TYPEDEF:
+			return readRecordTypeDef(register(new RecordTypeDef()));
+		case BinaryModelConstants.FUNCTION_TYPEDEF:
+			return readFunctionTypeDef(register(new FunctionTypeDef()));
+		default:
+			throw new IOException("Unknown node tag " + tag); //$NON-NLS-1$
+		}
+	}
+
+	private Block readBlock(final Block block) throws IOException {
+		readRange(block);
+
+		final int contentCount = readInt();
+		for (int i = 0; i < contentCount; i++) {
+			block.addContent(readNode());
+		}
+
+		final int localVarCount = readInt();
+		for (int i = 0; i < localVarCount; i++) {
+			final Item var = readNode(Item.class);
+			final int scopeMin = readInt();
+			final int scopeMax = readInt();
+			block.addLocalVar(new LocalVar(var, scopeMin, scopeMax));
+		}
+		return block;
+	}
+
+	private Item readItem(final Item item) throws IOException {
+		item.setName(readString());
+		item.setDocumentation(readString());
+		readRange(item);
+		final TypeRef type = readTypeRef();
+		if (type != null)
+			item.setType(type);
+
+		final int occurrenceCount = readInt();
+		for (int i = 0; i < occurrenceCount; i++) {
+			item.addOccurrence(readNode(Identifier.class));
+		}
+		return item;
+	}
+
+	private RecordTypeDef readRecordTypeDef(final RecordTypeDef record) throws IOException {
+		record.setName(readString());
+		record.setDocumentation(readString());
+		readRange(record);
+
+		final int fieldCount = readInt();
+		for (int i = 0; i < fieldCount; i++) {
+			record.addField(readNode(Item.class));
+		}
+		return record;
+	}
+
+	private FunctionTypeDef readFunctionTypeDef(final FunctionTypeDef function) throws IOException {
+		function.setDocumentation(readString());
+		readRange(function);
+
+		final int parameterCount = readInt();
+		for (int i = 0; i < parameterCount; i++) {
+			final String name = readString();
+			final TypeRef type = readTypeRef();
+			function.addParameter(new Parameter(name, type, readString()));
+		}
+
+		for (final Return ret : readReturns()) {
+			function.addReturn(ret);
+		}
+		return function;
+	}
+
+	private List<Return> readReturns() throws IOException {
+		final int returnCount = readInt();
+		final List<Return> returns = new ArrayList<Return>(returnCount);
+		for (int i = 0; i < returnCount; i++) {
+			final Return ret = new Return();
+			final int typeCount = readInt();
+			for (int j = 0; j < typeCount; j++) {
+				ret.addType(readTypeRef());
+			}
+			returns.add(ret);
+		}
+		return returns;
+	}
+
+	private TypeRef readTypeRef() throws IOException {
+		final int tag = readInt();
+		switch (tag) {
+		case BinaryModelConstants.TYPEREF_NULL:
+			return null;
+		case BinaryModelConstants.TYPEREF_EXTERNAL:
+			final String module = readString();
+			return new ExternalTypeRef(module, readString());
+		case BinaryModelConstants.TYPEREF_INTERNAL:
+			return new InternalTypeRef(readString());
+		case BinaryModelConstants.TYPEREF_MODULE:
+			final String moduleName = readString();
+			return new ModuleTypeRef(moduleName, readInt());
+		case BinaryModelConstants.TYPEREF_EXPR:
+			final ExprTypeRef exprTypeRef = new ExprTypeRef(readInt());
+			exprTypeRef.setExpression(readNode(LuaExpression.class));
+			return exprTypeRef;
+		case BinaryModelConstants.TYPEREF_PRIMITIVE:
+			return new PrimitiveTypeRef(readString());
+		case BinaryModelConstants.TYPEREF_INLINE:
+			return new InlineTypeRef(readNode(TypeDef.class));
+		case BinaryModelConstants.TYPEREF_LAZY:
+			return new LazyTypeRef();
+		default:
+			throw new IOException("Unknown type reference tag " + tag); //$NON-NLS-1$
+		}
+	}
+
+	private <T extends LuaASTNode> T register(final T node) {
+		read.add(node);
+		return node;
+	}
+
+	private <T extends LuaASTNode> T readRange(final T node) throws IOException {
+		node.setStart(readInt());
+		node.setEnd(readInt());
+		return node;
+	}
+
+	private String readString() throws IOException {
+		final int length = readInt();
+		if (length < 0)
+			return null;
+		final int end = position + length;
+		if (end > limit)
+			throw new IOException("String exceeds model end."); //$NON-NLS-1$
+
+		// Restore escaped bytes
+		final byte[] bytes = new byte[length];
+		int byteLength = 0;
+		while (position < end) {
+			final int b = data[position++] & 0xFF;
+			if (b != BinaryModelConstants.STRING_ESCAPE) {
+				bytes[byteLength++] = (byte) b;
+			} else if (position + 2 <= end) {
+				final int high = data[position++] - BinaryModelConstants.STRING_ESCAPE_DIGIT;
+				final int low = data[position++] - BinaryModelConstants.STRING_ESCAPE_DIGIT;
+				if (high < 0 || high > 0xF || low < 0 || low > 0xF)
+					throw new IOException("Malformed string in model."); //$NON-NLS-1$
+				bytes[byteLength++] = (byte) (high << 4 | low);
+			} else {
+				throw new IOException("Malformed string in model."); //$NON-NLS-1$
+			}
+		}
+
+		// Modified UTF-8, as JNI does. Bytes out of a valid sequence come from a source in an other encoding, they are read as ISO-8859-1.
+		final char[] chars = new char[byteLength];
+		int count = 0;
+		int i = 0;
+		while (i < byteLength) {
+			final int b = bytes[i] & 0xFF;
+			if ((b & 0xE0) == 0xC0 && isContinuation(bytes, i + 1, byteLength)) {
+				chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+				i += 2;
+			} else if ((b & 0xF0) == 0xE0 && isContinuation(bytes, i + 1, byteLength) && isContinuation(bytes, i + 2, byteLength)) {
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+				i += 3;
+			} else {
+				chars[count++] = (char) b;
+				i++;
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	private static boolean isContinuation(final byte[] bytes, final int index, final int length) {
+		return index < length && (bytes[index] & 0xC0) == 0x80;
+	}
+
+	private int readInt() throws IOException {
+		long bits = 0;
+		int shift = 0;
+		while (true) {
+			final int b = nextByte();
+			if (b >= BinaryModelConstants.INT_MORE) {
+				bits |= ((long) (b - BinaryModelConstants.INT_MORE)) << shift;
+				shift += BinaryModelConstants.INT_GROUP_BITS;
+				if (shift > Integer.SIZE + BinaryModelConstants.INT_GROUP_BITS)
+					throw new IOException("Malformed integer in model."); //$NON-NLS-1$
+			} else if (b >= BinaryModelConstants.INT_FINAL) {
+				bits |= ((long) (b - BinaryModelConstants.INT_FINAL)) << shift;
+				break;
+			} else {
+				throw new IOException("Malformed integer in model."); //$NON-NLS-1$
+			}
+		}
+		// Zigzag
+		return (int) ((bits >>> 1) ^ -(bits & 1));
+	}
+
+	private int nextByte() throws IOException {
+		if (position >= limit)
+			throw new IOException("Unexpected model end."); //$NON-NLS-1$
+		return data[position++] & 0xFF;
+	}
+}
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.models;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.ExprTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.ExternalTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.FunctionTypeDef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.InlineTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.InternalTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Item;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.LazyTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.LuaFileAPI;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.ModuleTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Parameter;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.PrimitiveTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.RecordTypeDef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Return;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.TypeDef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.TypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaASTNode;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Block;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Call;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Identifier;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Index;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Invoke;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LocalVar;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LuaInternalContent;
+
+/**
+ * Writes a {@link LuaSourceRoot} using the layout described in {@link BinaryModelConstants}, it can be read back with {@link BinaryModelReader}.
+ */
+public final class BinaryModelWriter {
+
+	private final OutputStream out;
+
+	/** Index of already written nodes */
+	private final Map<Object, Integer> written = new IdentityHashMap<Object, Integer>();
+
+	private BinaryModelWriter(final OutputStream output) {
+		out = output;
+	}
+
+	public static void write(final LuaSourceRoot root, final OutputStream output) throws IOException {
+		new BinaryModelWriter(output).writeSourceRoot(root);
+		output.flush();
+	}
+
+	private void writeSourceRoot(final LuaSourceRoot root) throws IOException {
+		writeInt(root.sourceEnd());
+
+		// Only valid models are worth to be written, erroneous ones are produced from Lua side only
+		if (root.hasError())
+			throw new IOException("Unable to write a model which contains a problem."); //$NON-NLS-1$
+		writeInt(0);
+
+		writeFileAPI(root.getFileapi());
+		writeInternalContent(root.getInternalContent());
+	}
+
+	private void writeFileAPI(final LuaFileAPI fileAPI) throws IOException {
+		writeString(fileAPI.getDocumentation());
+
+		writeInt(fileAPI.getTypes().size());
+		for (final Entry<String, TypeDef> type : fileAPI.getTypes().entrySet()) {
+			writeString(type.getKey());
+			writeNode(type.getValue());
+		}
+
+		writeInt(fileAPI.getGlobalvars().size());
+		for (final Item globalvar : fileAPI.getGlobalvars().values()) {
+			writeNode(globalvar);
+		}
+
+		writeReturns(fileAPI.getReturns());
+	}
+
+	private void writeInternalContent(final LuaInternalContent internalContent) throws IOException {
+		writeNode(internalContent.getContent());
+
+		final List<Item> unknownGlobalVars = internalContent.getUnknownglovalvars();
+		writeInt(unknownGlobalVars.size());
+		for (final Item item : unknownGlobalVars) {
+			writeNode(item);
+		}
+	}
+
+	private void writeNode(final LuaASTNode node) throws IOException {
+		if (node == null) {
+			writeInt(BinaryModelConstants.NULL);
+			return;
+		}
+
+		// Shared node
+		final Integer index = written.get(node);
+		if (index != null) {
+			writeInt(BinaryModelConstants.REF);
+			writeInt(index);
+			return;
+		}
+
+		// Index is given before children are written, so they can refer to their parent
+		written.put(node, written.size());
+		if (node instanceof Block) {
+			writeInt(BinaryModelConstants.BLOCK);
+			writeBlock((Block) node);
+		} else if (node instanceof Identifier) {
+			writeInt(BinaryModelConstants.IDENTIFIER);
+			writeRange(node);
+		} else if (node instanceof Index) {
+			final Index indexNode = (Index) node;
+			writeInt(BinaryModelConstants.INDEX);
+			writeRange(node);
+			writeNode(indexNode.getLeft());
+			writeString(indexNode.getRight());
+		} else if (node instanceof Call) {
+			writeInt(BinaryModelConstants.CALL);
+			writeRange(node);
+			writeNode(((Call) node).getFunction());
+		} else if (node instanceof Invoke) {
+			final Invoke invoke = (Invoke) node;
+			writeInt(BinaryModelConstants.INVOKE);
+			writeRange(node);
+			writeString(invoke.getFunctionName());
+			writeNode(invoke.getRecord());
+		} else if (node instanceof Item) {
+			writeInt(BinaryModelConstants.ITEM);
+			writeItem((Item) node);
+		} else if (node instanceof RecordTypeDef) {
+			writeInt(BinaryModelConstants.RECORD_TYPEDEF);
+			writeRecordTypeDef((RecordTypeDef) node);
+		} else if (node instanceof FunctionTypeDef) {
+			writeInt(BinaryModelConstants.FUNCTION_TYPEDEF);
+			writeFunctionTypeDef((FunctionTypeDef) node);
+		} else {
+			throw new IOException("Unable to write node of type " + node.getClass().getName()); //$NON-NLS-1$
+		}
+	}
+
+	private void writeBlock(final Block block) throws IOException {
+		writeRange(block);
+
+		writeInt(block.getContent().size());
+		for (final LuaASTNode node : block.getContent()) {
+			writeNode(node);
+		}
+
+		writeInt(block.getLocalVars().size());
+		for (final LocalVar localVar : block.getLocalVars()) {
+			writeNode(localVar.getVar());
+			writeInt(localVar.getScopeMinOffset());
+			writeInt(localVar.getScopeMaxOffset());
+		}
+	}
+
+	private void writeItem(final Item item) throws IOException {
+		writeString(item.getName());
+		writeString(item.getDocumentation());
+		writeRange(item);
+		writeTypeRef(item.getType());
+
+		// Definitions of identifiers are set back when occurrences are read
+		writeInt(item.getOccurrences().size());
+		for (final Identifier identifier : item.getOccurrences()) {
+			writeNode(identifier);
+		}
+	}
+
+	private void writeRecordTypeDef(final RecordTypeDef record) throws IOException {
+		writeString(record.getName());
+		writeString(record.getDocumentation());
+		writeRange(record);
+
+		writeInt(record.getFields().size());
+		for (final Item field : record.getFields().values()) {
+			writeNode(field);
+		}
+	}
+
+	private void writeFunctionTypeDef(final FunctionTypeDef function) throws IOException {
+		writeString(function.getDocumentation());
+		writeRange(function);
+
+		writeInt(function.getParameters().size());
+		for (final Parameter parameter : function.getParameters()) {
+			writeString(parameter.getName());
+			writeTypeRef(parameter.getType());
+			writeString(parameter.getDescription());
+		}
+
+		writeReturns(function.getReturns());
+	}
+
+	private void writeReturns(final List<Return> returns) throws IOException {
+		writeInt(returns.size());
+		for (final Return ret : returns) {
+			writeInt(ret.getTypes().size());
+			for (final TypeRef type : ret.getTypes()) {
+				writeTypeRef(type);
+			}
+		}
+	}
+
+	private void writeTypeRef(final TypeRef type) throws IOException {
+		if (type == null) {
+			writeInt(BinaryModelConstants.TYPEREF_NULL);
+		} else if (type instanceof ExternalTypeRef) {
+			writeInt(BinaryModelConstants.TYPEREF_EXTERNAL);
+			writeString(((ExternalTypeRef) type).getModuleName());
+			writeString(((ExternalTypeRef) type).getTypeName());
+		} else if (type instanceof InternalTypeRef) {
+			writeInt(BinaryModelConstants.TYPEREF_INTERNAL);
+			writeString(((InternalTypeRef) type).getTypeName());
+		} else if (type instanceof ModuleTypeRef) {
+			writeInt(BinaryModelConstants.TYPEREF_MODULE);
+			writeString(((ModuleTypeRef) type).getModuleName());
+			writeInt(((ModuleTypeRef) type).getReturnPosition());
+		} else if (type instanceof ExprTypeRef) {
+			writeInt(BinaryModelConstants.TYPEREF_EXPR);
+			writeInt(((ExprTypeRef) type).getReturnPosition());
+			writeNode(((ExprTypeRef) type).getExpression());
+		} else if (type instanceof PrimitiveTypeRef) {
+			writeInt(BinaryModelConstants.TYPEREF_PRIMITIVE);
+			writeString(((PrimitiveTypeRef) type).getTypeName());
+		} else if (type instanceof InlineTypeRef) {
+			writeInt(BinaryModelConstants.TYPEREF_INLINE);
+			writeNode(((InlineTypeRef) type).getDefinition());
+		} else if (type instanceof LazyTypeRef) {
+			writeInt(BinaryModelConstants.TYPEREF_LAZY);
+		} else {
+			throw new IOException("Unable to write type reference of type " + type.getClass().getName()); //$NON-NLS-1$
+		}
+	}
+
+	private void writeRange(final LuaASTNode node) throws IOException {
+		writeInt(node.sourceStart());
+		writeInt(node.sourceEnd());
+	}
+
+	private void writeString(final String string) throws IOException {
+		if (string == null) {
+			writeInt(-1);
+			return;
+		}
+
+		// Modified UTF-8, as JNI does
+		final int length = string.length();
+		int byteLength = 0;
+		for (int i = 0; i < length; i++) {
+			final char c = string.charAt(i);
+			if (c == BinaryModelConstants.STRING_ESCAPE)
+				byteLength += 3;
+			else if (c != 0 && c < 0x80)
+				byteLength++;
+			else if (c < 0x800)
+				byteLength += 2;
+			else
+				byteLength += 3;
+		}
+		writeInt(byteLength);
+		for (int i = 0; i < length; i++) {
+			final char c = string.charAt(i);
+			if (c == BinaryModelConstants.STRING_ESCAPE) {
+				out.write(BinaryModelConstants.STRING_ESCAPE);
+				out.write(BinaryModelConstants.STRING_ESCAPE_DIGIT + (c >> 4));
+				out.write(BinaryModelConstants.STRING_ESCAPE_DIGIT + (c & 0xF));
+			} else if (c != 0 && c < 0x80) {
+				out.write(c);
+			} else if (c < 0x800) {
+				out.write(0xC0 | (c >> 6));
+				out.write(0x80 | (c & 0x3F));
+			} else {
+				out.write(0xE0 | (c >> 12));
+				out.write(0x80 | ((c >> 6) & 0x3F));
+				out.write(0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	private void writeInt(final int value) throws IOException {
+		// Zigzag, so that small negative values stay short
+		long bits = value >= 0 ? 2L * value : -2L * value - 1;
+		while (bits > BinaryModelConstants.INT_GROUP_MASK) {
+			out.write(BinaryModelConstants.INT_MORE + (int) (bits & BinaryModelConstants.INT_GROUP_MASK));
+			bits >>>= BinaryModelConstants.INT_GROUP_BITS;
+		}
+		out.write(BinaryModelConstants.INT_FINAL + (int) bits);
+	}
+}
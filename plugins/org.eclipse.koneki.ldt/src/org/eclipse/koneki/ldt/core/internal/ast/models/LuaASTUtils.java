@@ -16,8 +16,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.eclipse.dltk.ast.ASTNode;
-import org.eclipse.dltk.ast.ASTVisitor;
 import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.koneki.ldt.core.LuaUtils;
 import org.eclipse.koneki.ldt.core.internal.Activator;
@@ -49,60 +47,20 @@ public final class LuaASTUtils {
 	private LuaASTUtils() {
 	}
 
-	private static class ClosestItemVisitor extends ASTVisitor {
-		private Item result = null;
-		private int position;
-
-		private String identifierName;
-
-		public ClosestItemVisitor(int position, String identifierName) {
-			super();
-			this.position = position;
-			this.identifierName = identifierName;
-		}
-
-		public Item getResult() {
-			return result;
-		}
-
-		@Override
-		public boolean visit(ASTNode node) throws Exception {
-			if (node instanceof LocalVar)
-				return false;
-
-			// we go down util we found the closer block.
-			if (node instanceof Block) {
-				if (node.sourceStart() <= position && position <= node.sourceEnd()) {
-					return true;
-				}
-				return false;
-			}
-			return false;
-		}
-
-		@Override
-		public boolean endvisit(ASTNode node) throws Exception {
-			if (result == null && node instanceof Block) {
-				// we go up only on the parent block
-				List<LocalVar> localVars = ((Block) node).getLocalVars();
-				for (LocalVar localVar : localVars) {
+	public static Item getClosestLocalVar(final LuaSourceRoot luaSourceRoot, final String identifierName, final int position) {
+		// look for the var in the blocks containing the position, from the closest one
+		try {
+			for (Block block : luaSourceRoot.getInternalContent().getOffsetIndex().getBlocksAt(position)) {
+				Item result = null;
+				for (LocalVar localVar : block.getLocalVars()) {
 					Item item = localVar.getVar();
 					if (item.getName().equals(identifierName)) {
 						result = item;
 					}
 				}
-				return true;
+				if (result != null)
+					return result;
 			}
-			return false;
-		}
-	};
-
-	public static Item getClosestLocalVar(final LuaSourceRoot luaSourceRoot, final String identifierName, final int position) {
-		// traverse the root block on the file with this visitor
-		try {
-			ClosestItemVisitor closestItemVisitor = new ClosestItemVisitor(position, identifierName);
-			luaSourceRoot.getInternalContent().getContent().traverse(closestItemVisitor);
-			return closestItemVisitor.getResult();
 			// CHECKSTYLE:OFF
 		} catch (Exception e) {
 			// CHECKSTYLE:ON
@@ -111,7 +69,19 @@ public final class LuaASTUtils {
 		return null;
 	}
 
-	public static TypeResolution resolveType(ISourceModule sourceModule, TypeRef typeRef) {
+	public static TypeResolution resolveType(final ISourceModule sourceModule, final TypeRef typeRef) {
+		if (typeRef == null)
+			return null;
+
+		return TypeResolutionCache.get(sourceModule, typeRef, 0, new TypeResolutionCache.Resolver() {
+			@Override
+			public TypeResolution resolve() {
+				return resolveUncachedType(sourceModule, typeRef);
+			}
+		});
+	}
+
+	private static TypeResolution resolveUncachedType(ISourceModule sourceModule, TypeRef typeRef) {
 		if (typeRef instanceof PrimitiveTypeRef) {
 			return resolveType(sourceModule, (PrimitiveTypeRef) typeRef);
 		}
@@ -201,7 +171,19 @@ public final class LuaASTUtils {
 		return resolveType(sourceModule, expr, 1);
 	}
 
-	public static TypeResolution resolveType(ISourceModule sourceModule, LuaExpression expr, int returnposition) {
+	public static TypeResolution resolveType(final ISourceModule sourceModule, final LuaExpression expr, final int returnposition) {
+		if (expr == null)
+			return null;
+
+		return TypeResolutionCache.get(sourceModule, expr, returnposition, new TypeResolutionCache.Resolver() {
+			@Override
+			public TypeResolution resolve() {
+				return resolveUncachedType(sourceModule, expr, returnposition);
+			}
+		});
+	}
+
+	private static TypeResolution resolveUncachedType(ISourceModule sourceModule, LuaExpression expr, int returnposition) {
 		if (expr instanceof Identifier) {
 			Definition definition = getDefinition(sourceModule, expr);
 			// resolve the type of the definition
@@ -328,41 +310,17 @@ public final class LuaASTUtils {
 		// the localVars collected, indexed by var name;
 		final Map<String, Item> collectedLocalVars = new HashMap<String, Item>();
 
-		// the visitor which will collect local vars and store it in the map.
-		ASTVisitor localvarCollector = new ASTVisitor() {
-			@Override
-			public boolean visit(ASTNode node) throws Exception {
-				// we go down util we found the closer block.
-				if (node instanceof Block) {
-					if (node.sourceStart() <= offset && offset <= node.sourceEnd()) {
-						return true;
-					}
-					return false;
-				}
-				return false;
-			}
-
-			@Override
-			public boolean endvisit(ASTNode node) throws Exception {
-				if (node instanceof Block) {
-					// we go up only on all the parent block which
-					List<LocalVar> localVars = ((Block) node).getLocalVars();
-					for (LocalVar localVar : localVars) {
-						Item item = localVar.getVar();
-						if (!collectedLocalVars.containsKey(item.getName())
-								&& (start == null || item.getName().toLowerCase().startsWith(start.toLowerCase()))) {
-							collectedLocalVars.put(item.getName(), item);
-						}
+		// collect local vars of all the blocks containing the offset, from the closest one
+		try {
+			for (Block block : luaSourceRoot.getInternalContent().getOffsetIndex().getBlocksAt(offset)) {
+				for (LocalVar localVar : block.getLocalVars()) {
+					Item item = localVar.getVar();
+					if (!collectedLocalVars.containsKey(item.getName())
+							&& (start == null || item.getName().toLowerCase().startsWith(start.toLowerCase()))) {
+						collectedLocalVars.put(item.getName(), item);
 					}
-					return true;
 				}
-				return false;
 			}
-		};
-
-		// traverse the root block on the file with this visitor
-		try {
-			luaSourceRoot.getInternalContent().getContent().traverse(localvarCollector);
 			// CHECKSTYLE:OFF
 		} catch (Exception e) {
 			// CHECKSTYLE:ON
@@ -373,11 +331,8 @@ public final class LuaASTUtils {
 	}
 
 	public static LuaExpression getLuaExpressionAt(LuaSourceRoot luaSourceRoot, final int startOffset, final int endOffset) {
-		// traverse the root block on the file with this visitor
 		try {
-			MatchNodeVisitor matchNodeVisitor = new MatchNodeVisitor(startOffset, endOffset, LuaExpression.class);
-			luaSourceRoot.getInternalContent().getContent().traverse(matchNodeVisitor);
-			return (LuaExpression) matchNodeVisitor.getNode();
+			return luaSourceRoot.getInternalContent().getOffsetIndex().getExpressionAt(startOffset, endOffset);
 
 			// CHECKSTYLE:OFF
 		} catch (Exception e) {
@@ -459,9 +414,8 @@ public final class LuaASTUtils {
 			if (preloadedLuaSourceRoot != null) {
 
 				// global var which start with 'start'
-				for (Item globalvar : preloadedLuaSourceRoot.getFileapi().getGlobalvars().values()) {
-					if (start == null || start.isEmpty() || globalvar.getName().toLowerCase().startsWith(start.toLowerCase()))
-						definitions.add(new Definition(preloadedSourceModule, globalvar));
+				for (Item globalvar : getGlobalVarsStartingWith(preloadedLuaSourceRoot, start)) {
+					definitions.add(new Definition(preloadedSourceModule, globalvar));
 				}
 			}
 		}
@@ -471,15 +425,20 @@ public final class LuaASTUtils {
 		LuaSourceRoot currentluaSourceRoot = LuaASTModelUtils.getLuaSourceRoot(sourceModule);
 		if (currentluaSourceRoot != null) {
 			// global var which start with 'start'
-			for (Item globalvar : currentluaSourceRoot.getFileapi().getGlobalvars().values()) {
-				if (start == null || start.isEmpty() || globalvar.getName().toLowerCase().startsWith(start.toLowerCase()))
-					definitions.add(new Definition(sourceModule, globalvar));
+			for (Item globalvar : getGlobalVarsStartingWith(currentluaSourceRoot, start)) {
+				definitions.add(new Definition(sourceModule, globalvar));
 			}
 		}
 
 		return definitions;
 	}
 
+	private static Collection<Item> getGlobalVarsStartingWith(final LuaSourceRoot luaSourceRoot, final String start) {
+		if (start == null || start.isEmpty())
+			return luaSourceRoot.getFileapi().getGlobalvars().values();
+		return luaSourceRoot.getFileapi().getGlobalvarsStartingWith(start);
+	}
+
 	public static Definition getGlobalVarDefinition(ISourceModule sourceModule, String varname) {
 		// SEARCH IN PRELOADED SOURCE MODULE
 		Definition definition = getGlobalVarDefinitionInPreloadedSourceModule(sourceModule, varname);
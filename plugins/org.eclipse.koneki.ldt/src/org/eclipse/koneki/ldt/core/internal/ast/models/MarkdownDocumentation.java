@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.models;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.cforcoding.jmd.MarkDown;
+
+/**
+ * Renders Markdown of documentation only when it is displayed.
+ *
+ * While parsing, Markdown parts of documentation are only marked with {@link #defer(String)}: models, and their persisted form, hold raw Markdown.
+ * {@link #render(String)} turns marked parts into HTML, the most recently rendered ones are cached by raw text.
+ */
+public final class MarkdownDocumentation {
+
+	/** Most recently rendered Markdown texts kept */
+	private static final int MAX_SIZE = 500;
+
+	private static final char START = '\u0002';
+	private static final char END = '\u0003';
+
+	private static final Map<String, String> CACHE = new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private MarkdownDocumentation() {
+	}
+
+	/**
+	 * @return given Markdown marked to be rendered by {@link #render(String)}
+	 */
+	public static String defer(final String markdown) {
+		return START + markdown + END;
+	}
+
+	/**
+	 * @return documentation with marked Markdown parts rendered as HTML, <code>null</code> for <code>null</code>
+	 */
+	public static String render(final String documentation) {
+		if (documentation == null || documentation.indexOf(START) < 0)
+			return documentation;
+
+		final StringBuilder html = new StringBuilder(documentation.length() * 2);
+		int copied = 0;
+		for (int start = documentation.indexOf(START); start >= 0; start = documentation.indexOf(START, copied)) {
+			final int end = documentation.indexOf(END, start);
+			if (end < 0)
+				break;
+			html.append(documentation, copied, start);
+			html.append(toHTML(documentation.substring(start + 1, end)));
+			copied = end + 1;
+		}
+		html.append(documentation, copied, documentation.length());
+		return html.toString();
+	}
+
+	private static String toHTML(final String markdown) {
+		synchronized (CACHE) {
+			final String html = CACHE.get(markdown);
+			if (html != null)
+				return html;
+		}
+		// MarkDown instances are not thread safe
+		final String html = new MarkDown(true).transform(markdown);
+		synchronized (CACHE) {
+			CACHE.put(markdown, html);
+		}
+		return html;
+	}
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.models;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.dltk.core.DLTKCore;
+import org.eclipse.dltk.core.ElementChangedEvent;
+import org.eclipse.dltk.core.IElementChangedListener;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.koneki.ldt.core.internal.ast.models.LuaASTUtils.TypeResolution;
+
+/**
+ * Cache of type resolutions done by {@link LuaASTUtils}, keyed by module and by the type reference or expression resolved.
+ *
+ * Resolutions go through other modules, so the whole cache is dropped on each model change. Type references and expressions are compared by
+ * identity, a new AST of a module never hits resolutions of the previous one: on reconcile of a working copy, only resolutions from or to its
+ * module are dropped, so that replaced ASTs are not kept reachable. Resolution of a node which is already being resolved by the same thread gives
+ * no type, so that recursive type references cannot loop; resolutions depending on such a cut are not cached.
+ */
+public final class TypeResolutionCache {
+
+	/** Most recently used resolutions kept */
+	private static final int MAX_SIZE = 2000;
+
+	/**
+	 * Computes a resolution missing from cache.
+	 */
+	interface Resolver {
+		TypeResolution resolve();
+	}
+
+	private static final Map<Key, TypeResolution> CACHE = new LinkedHashMap<Key, TypeResolution>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Key, TypeResolution> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/** Nodes being resolved by current thread */
+	private static final ThreadLocal<Resolving> RESOLVING = new ThreadLocal<Resolving>() {
+		@Override
+		protected Resolving initialValue() {
+			return new Resolving();
+		}
+	};
+
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+
+	/** Incremented when cache is dropped, so that a resolution computed meanwhile is not kept */
+	private static int generation;
+
+	private static IElementChangedListener changedListener = new IElementChangedListener() {
+		public void elementChanged(ElementChangedEvent event) {
+			if (event.getType() == ElementChangedEvent.POST_RECONCILE && event.getDelta() != null) {
+				final IModelElement element = event.getDelta().getElement();
+				if (element instanceof ISourceModule) {
+					clear((ISourceModule) element);
+					return;
+				}
+			}
+			clear();
+		}
+	};
+	static {
+		DLTKCore.addElementChangedListener(changedListener, ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE);
+	}
+
+	private TypeResolutionCache() {
+	}
+
+	/**
+	 * @param node
+	 *            type reference or expression resolved
+	 * @return resolution of node in module from cache, computed by resolver when missing
+	 */
+	static TypeResolution get(final ISourceModule module, final Object node, final int returnPosition, final Resolver resolver) {
+		final Key key = new Key(module, node, returnPosition);
+		final int startGeneration;
+		synchronized (CACHE) {
+			final TypeResolution cached = CACHE.get(key);
+			if (cached != null || CACHE.containsKey(key)) {
+				HITS.incrementAndGet();
+				return cached;
+			}
+			startGeneration = generation;
+		}
+		MISSES.incrementAndGet();
+
+		final Resolving resolving = RESOLVING.get();
+		if (!resolving.keys.add(key)) {
+			// recursive type reference
+			resolving.cycle = true;
+			return null;
+		}
+		try {
+			final TypeResolution resolution = resolver.resolve();
+			if (!resolving.cycle) {
+				synchronized (CACHE) {
+					if (startGeneration == generation)
+						CACHE.put(key, resolution);
+				}
+			}
+			return resolution;
+		} finally {
+			resolving.keys.remove(key);
+			if (resolving.keys.isEmpty())
+				resolving.cycle = false;
+		}
+	}
+
+	/**
+	 * Drop all cached resolutions.
+	 */
+	public static void clear() {
+		synchronized (CACHE) {
+			generation++;
+			CACHE.clear();
+		}
+	}
+
+	/**
+	 * Drop resolutions of nodes of module, and resolutions giving a type of module.
+	 */
+	public static void clear(final ISourceModule module) {
+		synchronized (CACHE) {
+			generation++;
+			for (final Iterator<Map.Entry<Key, TypeResolution>> iterator = CACHE.entrySet().iterator(); iterator.hasNext();) {
+				final Map.Entry<Key, TypeResolution> entry = iterator.next();
+				final TypeResolution resolution = entry.getValue();
+				if (module.equals(entry.getKey().module) || (resolution != null && module.equals(resolution.getModule())))
+					iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return count of resolutions found in cache
+	 */
+	public static long getHitCount() {
+		return HITS.get();
+	}
+
+	/**
+	 * @return count of resolutions computed
+	 */
+	public static long getMissCount() {
+		return MISSES.get();
+	}
+
+	private static class Resolving {
+		private final Set<Key> keys = new HashSet<Key>();
+		private boolean cycle;
+	}
+
+	private static class Key {
+		private final ISourceModule module;
+		private final Object node;
+		private final int returnPosition;
+
+		public Key(final ISourceModule module, final Object node, final int returnPosition) {
+			this.module = module;
+			this.node = node;
+			this.returnPosition = returnPosition;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key key = (Key) obj;
+			// AST nodes equality compares positions only, nodes are compared by identity
+			return node == key.node && returnPosition == key.returnPosition && (module == null ? key.module == null : module.equals(key.module));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(node);
+			hash = 31 * hash + returnPosition;
+			hash = 31 * hash + (null == module ? 0 : module.hashCode());
+			return hash;
+		}
+	}
+}
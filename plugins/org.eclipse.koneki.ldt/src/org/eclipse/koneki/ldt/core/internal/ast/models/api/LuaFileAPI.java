@@ -12,6 +12,8 @@ package org.eclipse.koneki.ldt.core.internal.ast.models.api;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
 
 import org.eclipse.dltk.ast.ASTVisitor;
 import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaASTNode;
@@ -26,6 +28,9 @@ public class LuaFileAPI extends LuaASTNode {
 	private HashMap<String, Item> globalvars = new HashMap<String, Item>();
 	private ArrayList<Return> returns = new ArrayList<Return>();
 
+	/** Global vars sorted by lower case name, built on first prefix search */
+	private TreeMap<String, List<Item>> globalvarsIndex;
+
 	public LuaFileAPI() {
 	}
 
@@ -34,9 +39,10 @@ public class LuaFileAPI extends LuaASTNode {
 		type.setParent(this);
 	}
 
-	public void addGlobalVar(final Item item) {
+	public synchronized void addGlobalVar(final Item item) {
 		globalvars.put(item.getName(), item);
 		item.setParent(this);
+		globalvarsIndex = null;
 	}
 
 	public void addReturns(final Return returnValue) {
@@ -59,6 +65,31 @@ public class LuaFileAPI extends LuaASTNode {
 		return globalvars;
 	}
 
+	/**
+	 * @return global vars which name starts with given prefix, ignoring case
+	 */
+	public synchronized List<Item> getGlobalvarsStartingWith(final String prefix) {
+		if (globalvarsIndex == null) {
+			globalvarsIndex = new TreeMap<String, List<Item>>();
+			for (Item globalvar : globalvars.values()) {
+				final String key = globalvar.getName().toLowerCase();
+				List<Item> items = globalvarsIndex.get(key);
+				if (items == null) {
+					items = new ArrayList<Item>(1);
+					globalvarsIndex.put(key, items);
+				}
+				items.add(globalvar);
+			}
+		}
+
+		// names starting with prefix are sorted right after it
+		final String start = prefix.toLowerCase();
+		final List<Item> result = new ArrayList<Item>();
+		for (List<Item> items : globalvarsIndex.subMap(start, start + Character.MAX_VALUE).values())
+			result.addAll(items);
+		return result;
+	}
+
 	public ArrayList<Return> getReturns() {
 		return returns;
 	}
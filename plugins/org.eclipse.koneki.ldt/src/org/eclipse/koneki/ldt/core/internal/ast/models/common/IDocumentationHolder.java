@@ -11,5 +11,8 @@
 package org.eclipse.koneki.ldt.core.internal.ast.models.common;
 
 public interface IDocumentationHolder {
+	/**
+	 * @return documentation, its Markdown parts are rendered by {@link org.eclipse.koneki.ldt.core.internal.ast.models.MarkdownDocumentation#render(String)}
+	 */
 	public String getDocumentation();
 }
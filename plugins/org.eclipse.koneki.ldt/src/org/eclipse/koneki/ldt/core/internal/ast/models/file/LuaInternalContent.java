@@ -20,6 +20,7 @@ import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaASTNode;
 public class LuaInternalContent extends LuaASTNode {
 	private List<Item> unknownglovalvars = new ArrayList<Item>();
 	private Block content;
+	private volatile OffsetIndex offsetIndex;
 
 	public LuaInternalContent() {
 		content = new Block();
@@ -31,6 +32,19 @@ public class LuaInternalContent extends LuaASTNode {
 
 	public void setContent(final Block content) {
 		this.content = content;
+		offsetIndex = null;
+	}
+
+	/**
+	 * Index of content by offset, built on first call. Content must not change once index is built.
+	 */
+	public OffsetIndex getOffsetIndex() throws Exception {
+		OffsetIndex index = offsetIndex;
+		if (index == null) {
+			index = new OffsetIndex(content);
+			offsetIndex = index;
+		}
+		return index;
 	}
 
 	public List<Item> getUnknownglovalvars() {
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.models.file;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+
+/**
+ * Index of blocks and expressions of a {@link LuaInternalContent} by offset.
+ *
+ * Nodes are numbered in traversal order and their ranges are kept in arrays sorted by start offset, so that nodes containing an offset are found in
+ * logarithmic time instead of traversing the whole tree. Answers are the ones of a traversal which only goes down in nodes containing the offset:
+ * a node is only returned when all its parents contain the offset too.
+ */
+public final class OffsetIndex {
+
+	private static final int NO_PARENT = -1;
+
+	private final ASTNode[] nodes;
+	private final int[] starts;
+	private final int[] ends;
+	private final int[] parents;
+	/** Rank of blocks in traversal end order, local variables of inner blocks are looked up first */
+	private final int[] blockEndRanks;
+
+	private final Intervals blocks;
+	private final Intervals expressions;
+
+	OffsetIndex(final Block root) throws Exception {
+		final Builder builder = new Builder();
+		if (root != null)
+			root.traverse(builder);
+
+		final int count = builder.nodes.size();
+		nodes = builder.nodes.toArray(new ASTNode[count]);
+		starts = new int[count];
+		ends = new int[count];
+		parents = new int[count];
+		blockEndRanks = new int[count];
+		for (int i = 0; i < count; i++) {
+			starts[i] = nodes[i].sourceStart();
+			ends[i] = nodes[i].sourceEnd();
+			parents[i] = builder.parents.get(i);
+			blockEndRanks[i] = builder.blockEndRanks.get(i);
+		}
+
+		final List<Integer> blockIds = new ArrayList<Integer>();
+		final List<Integer> expressionIds = new ArrayList<Integer>();
+		for (int i = 0; i < count; i++) {
+			if (nodes[i] instanceof Block)
+				blockIds.add(i);
+			else if (nodes[i] instanceof LuaExpression)
+				expressionIds.add(i);
+		}
+		blocks = new Intervals(blockIds);
+		expressions = new Intervals(expressionIds);
+	}
+
+	/**
+	 * @return blocks containing offset, inner blocks first
+	 */
+	public List<Block> getBlocksAt(final int offset) {
+		final IntList candidates = new IntList();
+		blocks.collect(offset, offset, candidates);
+
+		final List<Integer> found = new ArrayList<Integer>(candidates.size);
+		for (int i = 0; i < candidates.size; i++) {
+			final int id = candidates.values[i];
+			if (isReachable(id, offset, offset, true))
+				found.add(id);
+		}
+		final Integer[] sorted = found.toArray(new Integer[found.size()]);
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer id1, final Integer id2) {
+				return blockEndRanks[id1] - blockEndRanks[id2];
+			}
+		});
+
+		final List<Block> result = new ArrayList<Block>(sorted.length);
+		for (final Integer id : sorted) {
+			result.add((Block) nodes[id]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return innermost expression containing given range, null if there is none
+	 */
+	public LuaExpression getExpressionAt(final int start, final int end) {
+		final IntList candidates = new IntList();
+		expressions.collect(start, end, candidates);
+
+		// Walk candidates in traversal order, nested ones replace enclosing ones
+		final int[] ids = Arrays.copyOf(candidates.values, candidates.size);
+		Arrays.sort(ids);
+		int result = NO_PARENT;
+		for (final int id : ids) {
+			if (isReachable(id, start, end, false)
+					&& (result == NO_PARENT || (starts[id] >= starts[result] && ends[id] <= ends[result]))) {
+				result = id;
+			}
+		}
+		return result == NO_PARENT ? null : (LuaExpression) nodes[result];
+	}
+
+	/**
+	 * @return true when all parents of node contain given range, and are blocks if required
+	 */
+	private boolean isReachable(final int id, final int start, final int end, final boolean blocksOnly) {
+		for (int parent = parents[id]; parent != NO_PARENT; parent = parents[parent]) {
+			if (starts[parent] > start || ends[parent] < end || (blocksOnly && !(nodes[parent] instanceof Block)))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Numbers nodes in traversal order and remembers their parents.
+	 */
+	private static class Builder extends ASTVisitor {
+		private final List<ASTNode> nodes = new ArrayList<ASTNode>();
+		private final List<Integer> parents = new ArrayList<Integer>();
+		private final List<Integer> blockEndRanks = new ArrayList<Integer>();
+		private final List<Integer> stack = new ArrayList<Integer>();
+		private int blockCount;
+
+		@Override
+		public boolean visit(final ASTNode node) throws Exception {
+			parents.add(stack.isEmpty() ? NO_PARENT : stack.get(stack.size() - 1));
+			stack.add(nodes.size());
+			nodes.add(node);
+			blockEndRanks.add(NO_PARENT);
+			return true;
+		}
+
+		@Override
+		public boolean endvisit(final ASTNode node) throws Exception {
+			final int id = stack.remove(stack.size() - 1);
+			if (node instanceof Block)
+				blockEndRanks.set(id, blockCount++);
+			return true;
+		}
+	}
+
+	/**
+	 * Ranges of some nodes sorted by start offset, with a tree of their greatest end offsets.
+	 */
+	private final class Intervals {
+		private final int[] ids;
+		private final int[] sortedStarts;
+		/** Greatest end of each tree node, leaves are at leafCount + index */
+		private final int[] maxEnds;
+		private final int leafCount;
+
+		Intervals(final List<Integer> nodeIds) {
+			final Integer[] sorted = nodeIds.toArray(new Integer[nodeIds.size()]);
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(final Integer id1, final Integer id2) {
+					return starts[id1] < starts[id2] ? -1 : (starts[id1] == starts[id2] ? 0 : 1);
+				}
+			});
+
+			ids = new int[sorted.length];
+			sortedStarts = new int[sorted.length];
+			int leaves = 1;
+			while (leaves < sorted.length) {
+				leaves <<= 1;
+			}
+			leafCount = leaves;
+			maxEnds = new int[2 * leafCount];
+			Arrays.fill(maxEnds, Integer.MIN_VALUE);
+			for (int i = 0; i < sorted.length; i++) {
+				ids[i] = sorted[i];
+				sortedStarts[i] = starts[sorted[i]];
+				maxEnds[leafCount + i] = ends[sorted[i]];
+			}
+			for (int i = leafCount - 1; i > 0; i--) {
+				maxEnds[i] = Math.max(maxEnds[2 * i], maxEnds[2 * i + 1]);
+			}
+		}
+
+		/**
+		 * Add to result nodes starting at or before start and ending at or after end.
+		 */
+		void collect(final int start, final int end, final IntList result) {
+			// Last interval starting at or before start
+			int low = 0;
+			int high = sortedStarts.length - 1;
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+				if (sortedStarts[middle] <= start)
+					low = middle + 1;
+				else
+					high = middle - 1;
+			}
+			if (high >= 0)
+				collect(1, 0, leafCount - 1, high, end, result);
+		}
+
+		private void collect(final int treeNode, final int first, final int last, final int lastInterval, final int end, final IntList result) {
+			if (first > lastInterval || maxEnds[treeNode] < end)
+				return;
+			if (treeNode >= leafCount) {
+				result.add(ids[treeNode - leafCount]);
+				return;
+			}
+			final int middle = (first + last) >>> 1;
+			collect(2 * treeNode, first, middle, lastInterval, end, result);
+			collect(2 * treeNode + 1, middle + 1, last, lastInterval, end, result);
+		}
+	}
+
+	private static class IntList {
+		private int[] values = new int[8];
+		private int size;
+
+		void add(final int value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+	}
+}
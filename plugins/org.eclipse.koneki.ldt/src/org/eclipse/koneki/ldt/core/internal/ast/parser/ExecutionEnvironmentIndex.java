@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.dltk.compiler.env.IModuleSource;
+import org.eclipse.dltk.core.IModelElement;
+import org.eclipse.dltk.core.IProjectFragment;
+import org.eclipse.dltk.core.ISourceModule;
+import org.eclipse.dltk.core.environment.EnvironmentPathUtils;
+import org.eclipse.koneki.ldt.core.internal.Activator;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelConstants;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelReader;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelWriter;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Prebuilt models of the API files of an execution environment.
+ *
+ * The index is built when the execution environment is installed, and lies next to its API archive. It holds the binary form of each valid API
+ * module model, keyed like {@link PersistentModelCache} entries. Only its table of contents is kept in memory: a model is read from the file and
+ * decoded when its module is parsed, instead of going through Metalua. Indexes written by another version are ignored until they are built again,
+ * see {@link #isUpToDate(File)}.
+ */
+public final class ExecutionEnvironmentIndex {
+
+	/** Name of the index file, in the folder of the API archive */
+	public static final String INDEX_FILE = "api.index"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x4C444549; // LDEI
+	private static final String CHARSET = "UTF-8"; //$NON-NLS-1$
+	private static final String LUA_EXTENSION = ".lua"; //$NON-NLS-1$
+	private static final String INIT_MODULE = "init"; //$NON-NLS-1$
+
+	/** Opened indexes by file, an index is opened again when its file changes */
+	private static final Map<File, ExecutionEnvironmentIndex> INDEXES = new HashMap<File, ExecutionEnvironmentIndex>();
+
+	private final File file;
+	private final long lastModified;
+
+	/** <code>false</code> when file was written by another version, or could not be read */
+	private final boolean upToDate;
+
+	/** Position in file of each model, by key */
+	private final Map<String, Long> positions;
+
+	/** Length of each model, by key */
+	private final Map<String, Integer> lengths;
+
+	private ExecutionEnvironmentIndex(final File file, final long lastModified, final boolean upToDate, final Map<String, Long> positions,
+			final Map<String, Integer> lengths) {
+		this.file = file;
+		this.lastModified = lastModified;
+		this.upToDate = upToDate;
+		this.positions = positions;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * @return prebuilt model of this source when it is an API file of an indexed execution environment, <code>null</code> otherwise.
+	 */
+	public static LuaSourceRoot load(final IModuleSource input, final String source, final String moduleName) {
+		final File indexFile = getIndexFile(input);
+		if (indexFile == null)
+			return null;
+		final ExecutionEnvironmentIndex index = open(indexFile);
+		if (index == null)
+			return null;
+		return index.get(source, moduleName);
+	}
+
+	/**
+	 * @return index stored in given file, <code>null</code> when there is no such file.
+	 */
+	public static ExecutionEnvironmentIndex open(final File indexFile) {
+		synchronized (INDEXES) {
+			if (!indexFile.isFile()) {
+				INDEXES.remove(indexFile);
+				return null;
+			}
+			ExecutionEnvironmentIndex index = INDEXES.get(indexFile);
+			if (index == null || index.lastModified != indexFile.lastModified()) {
+				index = read(indexFile);
+				INDEXES.put(indexFile, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> when given file holds an index readable by this version, <code>false</code> when it is missing or has to be built
+	 *         again.
+	 */
+	public static boolean isUpToDate(final File indexFile) {
+		final ExecutionEnvironmentIndex index = open(indexFile);
+		return index != null && index.upToDate;
+	}
+
+	/**
+	 * @return prebuilt model of this source and module name, <code>null</code> when there is none.
+	 */
+	public LuaSourceRoot get(final String source, final String moduleName) {
+		final String key = PersistentModelCache.computeKey(source, moduleName);
+		if (key == null)
+			return null;
+		final Long position = positions.get(key);
+		if (position == null)
+			return null;
+
+		RandomAccessFile input = null;
+		try {
+			input = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			final byte[] bytes = new byte[lengths.get(key)];
+			input.seek(position);
+			input.readFully(bytes);
+			return BinaryModelReader.read(bytes);
+		} catch (final IOException e) {
+			Activator.logWarning(NLS.bind("Unable to read prebuilt model of {0}.", moduleName), e); //$NON-NLS-1$
+			return null;
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (final IOException e) {
+					Activator.logWarning(NLS.bind("Unable to close file {0}.", file.getPath()), e); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return quantity of prebuilt models
+	 */
+	public int size() {
+		return positions.size();
+	}
+
+	/**
+	 * Builds models of all Lua files of an API archive and stores them in an index file. Files with syntax errors are left out, they will be parsed
+	 * as usual.
+	 */
+	public static void build(final File archive, final File indexFile) throws IOException {
+		final ByteArrayOutputStream models = new ByteArrayOutputStream();
+		final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+		final DataOutputStream table = new DataOutputStream(contents);
+		int count = 0;
+
+		final ZipFile zipFile = new ZipFile(archive);
+		try {
+			final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+			while (zipEntries.hasMoreElements()) {
+				final ZipEntry zipEntry = zipEntries.nextElement();
+				if (zipEntry.isDirectory() || !zipEntry.getName().endsWith(LUA_EXTENSION))
+					continue;
+
+				final InputStream input = zipFile.getInputStream(zipEntry);
+				final String source;
+				try {
+					source = IOUtils.toString(input, CHARSET);
+				} finally {
+					IOUtils.closeQuietly(input);
+				}
+				final String moduleName = getModuleName(zipEntry.getName());
+				final LuaSourceRoot root = buildModel(source, moduleName);
+				final String key = PersistentModelCache.computeKey(source, moduleName);
+				if (root == null || key == null)
+					continue;
+
+				final int position = models.size();
+				BinaryModelWriter.write(root, models);
+				table.writeUTF(key);
+				table.writeInt(position);
+				table.writeInt(models.size() - position);
+				count++;
+			}
+		} finally {
+			try {
+				zipFile.close();
+			} catch (final IOException e) {
+				Activator.logWarning(NLS.bind("Unable to close zip file {0}.", archive.getPath()), e); //$NON-NLS-1$
+			}
+		}
+		table.close();
+
+		// Write in a temporary file first, so that concurrent readers never see partial indexes
+		final File temporary = File.createTempFile(indexFile.getName(), null, indexFile.getParentFile());
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new FileOutputStream(temporary));
+			output.writeInt(MAGIC);
+			output.writeInt(BinaryModelConstants.FORMAT_VERSION);
+			output.writeUTF(PersistentModelCache.getBuildersVersion());
+			output.writeInt(count);
+			output.writeInt(contents.size());
+			contents.writeTo(output);
+			models.writeTo(output);
+			output.close();
+			output = null;
+
+			if (indexFile.exists() && !indexFile.delete())
+				throw new IOException(NLS.bind("Unable to replace index {0}.", indexFile.getPath())); //$NON-NLS-1$
+			if (!temporary.renameTo(indexFile))
+				throw new IOException(NLS.bind("Unable to write index {0}.", indexFile.getPath())); //$NON-NLS-1$
+
+			// File modification time may be unchanged, when previous index was written in the same second
+			synchronized (INDEXES) {
+				INDEXES.remove(indexFile);
+			}
+		} finally {
+			IOUtils.closeQuietly(output);
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * @return model of an API file, <code>null</code> when it is not valid.
+	 */
+	private static LuaSourceRoot buildModel(final String source, final String moduleName) {
+		try {
+			final LuaSourceRoot root = LuaSourceParser.getModelsBuilder().buildAST(source, moduleName);
+			if (root == null || root.hasError())
+				return null;
+
+			// Handle encoding shifts, as parser does
+			final OffsetFixer fixer = new OffsetFixer(source);
+			if (!fixer.isIdentity())
+				root.traverse(new EncodingVisitor(fixer));
+			return root;
+		}
+		// CHECKSTYLE:OFF
+		catch (final Exception e) {
+			// CHECKSTYLE:ON
+			Activator.logWarning(NLS.bind("Unable to build model of {0}.", moduleName), e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	/**
+	 * @return module name of an archive entry, with dot syntax (support init.lua case)
+	 */
+	private static String getModuleName(final String entryName) {
+		String moduleName = entryName.substring(0, entryName.length() - LUA_EXTENSION.length());
+		final int lastSeparator = moduleName.lastIndexOf('/');
+		if (lastSeparator > 0 && INIT_MODULE.equals(moduleName.substring(lastSeparator + 1)))
+			moduleName = moduleName.substring(0, lastSeparator);
+		return moduleName.replace('/', '.');
+	}
+
+	/**
+	 * @return index file expected next to the archive holding this source, <code>null</code> when it is not from an archive.
+	 */
+	private static File getIndexFile(final IModuleSource input) {
+		final IModelElement element = input.getModelElement();
+		if (!(element instanceof ISourceModule))
+			return null;
+		final IProjectFragment fragment = (IProjectFragment) element.getAncestor(IModelElement.PROJECT_FRAGMENT);
+		if (fragment == null || !fragment.isArchive())
+			return null;
+
+		IPath archivePath = fragment.getPath();
+		if (EnvironmentPathUtils.isFull(archivePath))
+			archivePath = EnvironmentPathUtils.getLocalPath(archivePath);
+		final File folder = archivePath.toFile().getParentFile();
+		return folder != null ? new File(folder, INDEX_FILE) : null;
+	}
+
+	/**
+	 * @return index read from file, an empty one when it is outdated or unreadable.
+	 */
+	private static ExecutionEnvironmentIndex read(final File indexFile) {
+		final long lastModified = indexFile.lastModified();
+		final Map<String, Long> positions = new HashMap<String, Long>();
+		final Map<String, Integer> lengths = new HashMap<String, Integer>();
+		boolean upToDate = false;
+
+		RandomAccessFile input = null;
+		try {
+			input = new RandomAccessFile(indexFile, "r"); //$NON-NLS-1$
+			if (input.readInt() == MAGIC && input.readInt() == BinaryModelConstants.FORMAT_VERSION
+					&& PersistentModelCache.getBuildersVersion().equals(input.readUTF())) {
+				final int count = input.readInt();
+				final byte[] contents = new byte[input.readInt()];
+				input.readFully(contents);
+
+				// Models follow the table of contents
+				final long start = input.getFilePointer();
+				final DataInputStream table = new DataInputStream(new ByteArrayInputStream(contents));
+				for (int i = 0; i < count; i++) {
+					final String key = table.readUTF();
+					positions.put(key, start + table.readInt());
+					lengths.put(key, table.readInt());
+				}
+				upToDate = true;
+			}
+		} catch (final IOException e) {
+			Activator.logWarning(NLS.bind("Unable to read index {0}.", indexFile.getPath()), e); //$NON-NLS-1$
+			positions.clear();
+			upToDate = false;
+		} finally {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (final IOException e) {
+					Activator.logWarning(NLS.bind("Unable to close file {0}.", indexFile.getPath()), e); //$NON-NLS-1$
+				}
+			}
+		}
+		return new ExecutionEnvironmentIndex(indexFile, lastModified, upToDate, positions, lengths);
+	}
+}
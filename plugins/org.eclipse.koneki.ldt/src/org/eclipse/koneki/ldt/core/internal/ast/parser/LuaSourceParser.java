@@ -27,6 +27,7 @@ import org.eclipse.dltk.core.ElementChangedEvent;
 import org.eclipse.dltk.core.IElementChangedListener;
 import org.eclipse.dltk.core.IModelElement;
 import org.eclipse.dltk.core.IModelElementDelta;
+import org.eclipse.dltk.core.ISourceModule;
 import org.eclipse.koneki.ldt.core.LuaUtils;
 import org.eclipse.koneki.ldt.core.internal.Activator;
 import org.eclipse.koneki.ldt.core.internal.ast.models.LuaDLTKModelUtils;
@@ -103,66 +104,114 @@ public class LuaSourceParser extends AbstractSourceParser {
 	public IModuleDeclaration parse(IModuleSource input, IProblemReporter reporter) {
 		LuaSourceRoot module = new LuaSourceRoot(input.getSourceContents().length());
 
-		synchronized (LuaSourceParser.class) {
-			try {
-				String moduleName = LuaUtils.getModuleFullName(input);
-
-				// Build AST
-				final String source = input.getSourceContents();
-				module = astBuilder.buildAST(source, moduleName);
+		// Parsing is done without lock, model builder manages a pool of Lua states
+		try {
+			String moduleName = LuaUtils.getModuleFullName(input);
+
+			// Models of execution environment APIs and of unchanged sources are available from disk, they are already encoding-fixed
+			final String source = input.getSourceContents();
+			LuaSourceRoot persisted = ExecutionEnvironmentIndex.load(input, source, moduleName);
+			if (persisted == null)
+				persisted = PersistentModelCache.load(source, moduleName);
+			if (persisted != null) {
+				module = persisted;
+			} else {
+				// Build AST, working copies change on each keystroke, only edited statements are parsed again
+				if (isWorkingCopy(input))
+					module = astBuilder.buildIncrementalAST(source, moduleName, input.getModelElement().getHandleIdentifier());
+				else
+					module = astBuilder.buildAST(source, moduleName);
 
 				/*
 				 * Handle encoding shifts
 				 */
 
-				// Compute encoding shifts
+				// Compute encoding shifts, there are none in ASCII sources
 				final OffsetFixer fixer = new OffsetFixer(source);
+				if (!fixer.isIdentity()) {
 
-				// Fix AST
-				if (module != null)
-					module.traverse(new EncodingVisitor(fixer));
+					// Fix AST
+					if (module != null)
+						module.traverse(new EncodingVisitor(fixer));
 
-				// Fix problems
-				if (reporter instanceof ProblemCollector) {
-					for (final IProblem problem : ((ProblemCollector) reporter).getProblems()) {
-						problem.setSourceStart(fixer.getCharacterPosition(problem.getSourceStart()));
-						problem.setSourceEnd(fixer.getCharacterPosition(problem.getSourceEnd()));
+					// Fix problems
+					if (reporter instanceof ProblemCollector) {
+						for (final IProblem problem : ((ProblemCollector) reporter).getProblems()) {
+							problem.setSourceStart(fixer.getCharacterPosition(problem.getSourceStart()));
+							problem.setSourceEnd(fixer.getCharacterPosition(problem.getSourceEnd()));
+						}
+					}
+
+					// Fix syntax error, it is located in bytes by Lua side
+					if (module != null && module.hasError()) {
+						final DefaultProblem problem = module.getProblem();
+						if (problem.getSourceStart() >= 0)
+							problem.setSourceStart(fixer.getCharacterPosition(problem.getSourceStart()));
+						if (problem.getSourceEnd() >= 0)
+							problem.setSourceEnd(fixer.getCharacterPosition(problem.getSourceEnd()));
 					}
 				}
+
+				// Working copies change on each keystroke, only saved content is worth to be kept across sessions
+				if (module != null && !isWorkingCopy(input))
+					PersistentModelCache.store(source, moduleName, module);
 			}
-			// CHECKSTYLE:OFF
-			catch (final Exception e) {
-				// CHECKSTYLE:ON
-				Activator.logWarning(NLS.bind("Unable to parse file {0}.", input.getFileName()), e); //$NON-NLS-1$
-				// the module is probably on error.
-				if (module == null)
-					module = new LuaSourceRoot(input.getSourceContents().length());
-				module.setProblem(1, 1, 0, 0, "This file probably contains a syntax error."); //$NON-NLS-1$
-			}
+		}
+		// CHECKSTYLE:OFF
+		catch (final Exception e) {
+			// CHECKSTYLE:ON
+			Activator.logWarning(NLS.bind("Unable to parse file {0}.", input.getFileName()), e); //$NON-NLS-1$
+			// the module is probably on error.
+			if (module == null)
+				module = new LuaSourceRoot(input.getSourceContents().length());
+			module.setProblem(1, 1, 0, 0, "This file probably contains a syntax error."); //$NON-NLS-1$
+		}
 
-			// Deal with errors on Lua side
-			if (module != null) {
-				// if module contains a syntax error
-				if (module.hasError()) {
-					// add error to repoter
-					final DefaultProblem problem = module.getProblem();
-					problem.setOriginatingFileName(input.getFileName());
-					reporter.reportProblem(problem);
-
-					// use AST in cache
-					if (input.getModelElement() != null) {
+		// Deal with errors on Lua side
+		if (module != null) {
+			// if module contains a syntax error
+			if (module.hasError()) {
+				// add error to repoter
+				final DefaultProblem problem = module.getProblem();
+				problem.setOriginatingFileName(input.getFileName());
+				reporter.reportProblem(problem);
+
+				// use AST in cache
+				if (input.getModelElement() != null) {
+					synchronized (LuaSourceParser.class) {
 						final LuaSourceRoot cached = (LuaSourceRoot) cache.get(input.getModelElement());
 						if (cached != null) {
 							cached.setError(true);
 							return cached;
 						}
 					}
-				} else if (input.getModelElement() != null) {
-					// if there are no error, put the new AST in cache
+				}
+			} else if (input.getModelElement() != null) {
+				// if there are no error, put the new AST in cache
+				synchronized (LuaSourceParser.class) {
 					cache.put(input.getModelElement(), module);
 				}
 			}
 		}
 		return module;
 	}
+
+	/**
+	 * @return models builder shared by all parsers
+	 */
+	static ModelsBuilderLuaModule getModelsBuilder() {
+		return astBuilder;
+	}
+
+	/**
+	 * Closes idle Lua states of models builder.
+	 */
+	public static void dispose() {
+		astBuilder.dispose();
+	}
+
+	private static boolean isWorkingCopy(final IModuleSource input) {
+		final IModelElement element = input.getModelElement();
+		return element instanceof ISourceModule && ((ISourceModule) element).isWorkingCopy();
+	}
 }
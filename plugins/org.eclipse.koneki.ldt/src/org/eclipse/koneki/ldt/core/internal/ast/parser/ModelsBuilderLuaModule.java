@@ -10,18 +10,42 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.core.internal.ast.parser;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.koneki.ldt.core.internal.Activator;
+import org.eclipse.koneki.ldt.core.internal.LuaLanguageToolkit;
+import org.eclipse.koneki.ldt.core.internal.PreferenceInitializer;
 import org.eclipse.koneki.ldt.core.internal.ast.models.APIModelFactory;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelReader;
 import org.eclipse.koneki.ldt.core.internal.ast.models.InternalModelFactory;
 import org.eclipse.koneki.ldt.core.internal.ast.models.ModelFactory;
 import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
 import org.eclipse.koneki.ldt.metalua.AbstractMetaLuaModule;
+import org.eclipse.osgi.util.NLS;
 
+import com.naef.jnlua.LuaRuntimeException;
 import com.naef.jnlua.LuaState;
 
+/**
+ * Builds Lua models using a bounded pool of Metalua {@link LuaState}s, so independent modules can be parsed concurrently.
+ * 
+ * The pool size is read from the {@link PreferenceInitializer#PARSER_POOL_SIZE} preference, it defaults to the number of available processors.
+ * States are created lazily, only when all existing ones are busy.
+ * 
+ * Unless {@link PreferenceInitializer#PARSER_BINARY_TRANSFER} is disabled, models are transferred from Lua as a single encoded string decoded by
+ * {@link BinaryModelReader}, instead of one Java call per node.
+ * 
+ * Sources being edited are built with {@link #buildIncrementalAST(String, String, String)}: each state keeps the last AST of a few sources and only
+ * parses again top-level statements touched since. Successive builds of the same source are preferably given to the state which built it last.
+ */
 public class ModelsBuilderLuaModule extends AbstractMetaLuaModule {
 
 	public static final String LOCAL_LIB_PATH = "/script/local";//$NON-NLS-1$
@@ -32,23 +56,216 @@ public class ModelsBuilderLuaModule extends AbstractMetaLuaModule {
 	public static final String INTERNAL_MODEL_BUILDER = "models/internalmodelbuilder";//$NON-NLS-1$
 	public static final String INTERNAL_MODEL_BUILDER_SCRIPT = INTERNAL_MODEL_BUILDER + ".mlua";//$NON-NLS-1$
 
-	private LuaState lua = null;
+	/** States ready to build a model */
+	private final BlockingQueue<LuaState> idleStates = new LinkedBlockingQueue<LuaState>();
 
-	public synchronized LuaSourceRoot buildAST(final String source, final String modulename) {
-		if (lua == null)
-			lua = loadLuaModule();
+	/** Quantity of states created so far, idle or not */
+	private int createdStates = 0;
 
-		pushLuaModule(lua);
-		lua.getField(-1, "build"); //$NON-NLS-1$
-		lua.pushString(source);
-		lua.pushString(modulename);
-		lua.call(2, 1);
-		LuaSourceRoot luaSourceRoot = lua.checkJavaObject(-1, LuaSourceRoot.class);
-		lua.pop(2);
+	/** Serializes reservation of states to create, and script folders lookup which is not thread safe */
+	private final Object creationLock = new Object();
 
-		// lua.close();
+	/** Maximum quantity of sources for which the last state used is remembered */
+	private static final int MAX_AFFINITIES = 64;
 
-		return luaSourceRoot;
+	/** Last state which built each incrementally built source */
+	private final Map<String, LuaState> affinities = new LinkedHashMap<String, LuaState>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, LuaState> eldest) {
+			return size() > MAX_AFFINITIES;
+		}
+	};
+
+	public LuaSourceRoot buildAST(final String source, final String modulename) {
+		return buildAST(source, modulename, isBinaryTransferEnabled());
+	}
+
+	/**
+	 * @param binary
+	 *            <code>true</code> to transfer model from Lua as a single encoded string, <code>false</code> to create it node by node from Lua
+	 */
+	public LuaSourceRoot buildAST(final String source, final String modulename, final boolean binary) {
+		return buildAST(source, modulename, null, binary);
+	}
+
+	/**
+	 * Builds model of a source being edited, only statements changed since its last build are parsed again.
+	 * 
+	 * @param key
+	 *            identifies successive versions of the same source, the handle of the edited element for instance
+	 */
+	public LuaSourceRoot buildIncrementalAST(final String source, final String modulename, final String key) {
+		return buildAST(source, modulename, isIncrementalParsingEnabled() ? key : null, isBinaryTransferEnabled());
+	}
+
+	private LuaSourceRoot buildAST(final String source, final String modulename, final String key, final boolean binary) {
+		final LuaState lua = acquireLuaState(key);
+		// State is confined to this thread until released
+		lua.setOwner(Thread.currentThread());
+		try {
+			if (binary) {
+				final LuaSourceRoot luaSourceRoot = buildBinaryAST(lua, source, modulename, key);
+				if (luaSourceRoot != null)
+					return luaSourceRoot;
+			}
+			pushLuaModule(lua);
+			lua.getField(-1, "build"); //$NON-NLS-1$
+			lua.pushString(source);
+			lua.pushString(modulename);
+			pushKey(lua, key);
+			lua.call(3, 1);
+			LuaSourceRoot luaSourceRoot = lua.checkJavaObject(-1, LuaSourceRoot.class);
+			return luaSourceRoot;
+		} finally {
+			// Leave the stack clean for next user, even when an error occurred
+			lua.setTop(0);
+			lua.setOwner(null);
+			releaseLuaState(lua, key);
+		}
+	}
+
+	/**
+	 * @return model decoded from the string built on Lua side, <code>null</code> when it could not be decoded.
+	 */
+	private LuaSourceRoot buildBinaryAST(final LuaState lua, final String source, final String modulename, final String key) {
+		try {
+			pushLuaModule(lua);
+			lua.getField(-1, "buildbinary"); //$NON-NLS-1$
+			lua.pushString(source);
+			lua.pushString(modulename);
+			pushKey(lua, key);
+			lua.call(3, 1);
+			return BinaryModelReader.read(lua.toString(-1));
+		} catch (final IOException e) {
+			Activator.logWarning(NLS.bind("Unable to decode model of {0}, it will be built node by node.", modulename), e); //$NON-NLS-1$
+		} catch (final LuaRuntimeException e) {
+			Activator.logWarning(NLS.bind("Unable to encode model of {0}, it will be built node by node.", modulename), e); //$NON-NLS-1$
+		} finally {
+			lua.setTop(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Provides an idle state from the pool. A new state is created when none is idle and pool is not full, else way we wait for a state to be
+	 * released.
+	 * 
+	 * @param key
+	 *            when not <code>null</code>, the state which last built this source is preferred, it holds its previous AST
+	 */
+	private LuaState acquireLuaState(final String key) {
+		if (key != null) {
+			final LuaState preferred;
+			synchronized (affinities) {
+				preferred = affinities.get(key);
+			}
+			if (preferred != null && idleStates.remove(preferred))
+				return preferred;
+		}
+
+		LuaState lua = idleStates.poll();
+		if (lua != null)
+			return lua;
+
+		boolean create = false;
+		synchronized (creationLock) {
+			// An other thread may have released a state meanwhile
+			lua = idleStates.poll();
+			if (lua != null)
+				return lua;
+			if (createdStates < getPoolSize()) {
+				createdStates++;
+				create = true;
+			}
+		}
+		if (create) {
+			// Loading is long, other threads may meanwhile take released states or create their own
+			boolean loaded = false;
+			try {
+				lua = loadLuaModule();
+				loaded = true;
+				return lua;
+			} finally {
+				if (!loaded) {
+					synchronized (creationLock) {
+						createdStates--;
+					}
+				}
+			}
+		}
+
+		// Pool is full, wait for a state
+		try {
+			return idleStates.take();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a Lua state to build model.", e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * @see com.naef.jnlua.eclipse.AbstractLuaModule#getScriptFolder(java.lang.String)
+	 */
+	@Override
+	protected File getScriptFolder(final String relativepath) {
+		synchronized (creationLock) {
+			return super.getScriptFolder(relativepath);
+		}
+	}
+
+	/**
+	 * Closes idle states. Module remains usable, next builds create new states.
+	 */
+	public void dispose() {
+		synchronized (affinities) {
+			affinities.clear();
+		}
+		for (LuaState lua = idleStates.poll(); lua != null; lua = idleStates.poll()) {
+			lua.close();
+			synchronized (creationLock) {
+				createdStates--;
+			}
+		}
+	}
+
+	private void releaseLuaState(final LuaState lua, final String key) {
+		if (key != null) {
+			synchronized (affinities) {
+				affinities.put(key, lua);
+			}
+		}
+		idleStates.offer(lua);
+	}
+
+	/**
+	 * @return maximum quantity of {@link LuaState} this module is allowed to create
+	 */
+	private static int getPoolSize() {
+		final int size = Platform.getPreferencesService().getInt(LuaLanguageToolkit.getDefault().getPreferenceQualifier(),
+				PreferenceInitializer.PARSER_POOL_SIZE, Runtime.getRuntime().availableProcessors(), null);
+		return size > 0 ? size : 1;
+	}
+
+	private static boolean isBinaryTransferEnabled() {
+		return Platform.getPreferencesService().getBoolean(LuaLanguageToolkit.getDefault().getPreferenceQualifier(),
+				PreferenceInitializer.PARSER_BINARY_TRANSFER, true, null);
+	}
+
+	/**
+	 * Pushes key, or nil when source is not built incrementally
+	 */
+	private static void pushKey(final LuaState lua, final String key) {
+		if (key != null)
+			lua.pushString(key);
+		else
+			lua.pushNil();
+	}
+
+	private static boolean isIncrementalParsingEnabled() {
+		return Platform.getPreferencesService().getBoolean(LuaLanguageToolkit.getDefault().getPreferenceQualifier(),
+				PreferenceInitializer.PARSER_INCREMENTAL, true, null);
 	}
 
 	/**
@@ -10,83 +10,101 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.core.internal.ast.parser;
 
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
- * Lua deals with characters like C does: 8 bit clean. So does Metalua. Eclipse components such as editors handle several {@link Charset}s. Here, we
+ * Lua deals with characters like C does: 8 bit clean. So does Metalua. Eclipse components such as editors handle several {@link java.nio.charset.Charset}s. Here, we
  * do the matching between Lua offsets and Java charset-aware offsets.
+ * 
+ * Source is scanned once, positions of multi-byte characters are kept in sorted arrays and looked up by binary search. Sources made of ASCII
+ * characters only need no fix at all, see {@link #isIdentity()}.
  */
 public class OffsetFixer {
 
-	/**
-	 * Key: byte position (Lua string offset)<br/>
-	 * Value: Difference between byte positions and character positions
-	 */
-	private final TreeMap<Integer, Integer> cache;
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** Byte positions (Lua string offsets) following each multi-byte character, in increasing order */
+	private int[] bytePositions;
+
+	/** Difference between byte positions and character positions, at matching byte position */
+	private int[] deltas;
+
+	/** Quantity of multi-byte characters */
+	private int size;
+
 	private final int charactersLength;
 
 	public OffsetFixer(final String src) {
+		charactersLength = src.length();
+
+		// Fast path, ASCII characters are encoded with one byte
+		int index = 0;
+		while (index < charactersLength && isSingleByte(src.charAt(index))) {
+			index++;
+		}
+		if (index == charactersLength)
+			return;
+
 		/*
-		 * Fetch decoder for charset
-		 * 
 		 * The JNI uses modified UTF-8 strings to represent various string types. Modified UTF-8 strings are the same as those used by the Java VM.
 		 * Modified UTF-8 strings are encoded so that character sequences that contain only non-null ASCII characters can be represented using only
 		 * one byte per character, but all Unicode characters can be represented.
 		 */
-		final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder(); //$NON-NLS-1$
-
-		/*
-		 * Build cache
-		 */
-		final CharBuffer source = CharBuffer.wrap(src);
-		cache = new TreeMap<Integer, Integer>();
-		charactersLength = source.length();
-
-		final ByteBuffer byteBuffer = ByteBuffer.allocate(Math.round(encoder.maxBytesPerChar()));
-		final int averageBytesPerChar = Math.round(encoder.averageBytesPerChar());
-
-		// Loop over all characters and check if they are encoded with more than one byte
-		int bytePosition = 0;
+		bytePositions = new int[INITIAL_CAPACITY];
+		deltas = new int[INITIAL_CAPACITY];
+		int bytePosition = index;
 		int delta = 0;
-		source.limit(0);
-		while (source.position() < charactersLength) {
-
-			// Read next character
-			source.limit(source.limit() + 1);
-			encoder.encode(source, byteBuffer, false);
-
-			// Character byte length is longer than a regular character, it is valuable to cache
-			int bytesForCurrentChar = byteBuffer.position();
-			bytePosition += bytesForCurrentChar;
-			if (bytesForCurrentChar > averageBytesPerChar) {
+		for (; index < charactersLength; index++) {
+			final char c = src.charAt(index);
+			if (isSingleByte(c)) {
+				bytePosition++;
+			} else {
+				// Null and characters up to U+07FF take two bytes, others three, surrogates are encoded separately
+				final int bytesForCurrentChar = c <= 0x07FF ? 2 : 3;
+				bytePosition += bytesForCurrentChar;
+				delta += bytesForCurrentChar - 1;
+				add(bytePosition, delta);
+			}
+		}
+	}
 
-				// Compute difference between encoding character and 8 bit clean
-				delta += bytesForCurrentChar - averageBytesPerChar;
+	private static boolean isSingleByte(final char c) {
+		return c != 0 && c <= 0x007F;
+	}
 
-				// Cache byte position and difference with char position
-				cache.put(bytePosition, delta);
-			}
-			byteBuffer.clear();
+	private void add(final int bytePosition, final int delta) {
+		if (size == bytePositions.length) {
+			bytePositions = Arrays.copyOf(bytePositions, size * 2);
+			deltas = Arrays.copyOf(deltas, size * 2);
 		}
+		bytePositions[size] = bytePosition;
+		deltas[size] = delta;
+		size++;
 	}
 
 	public int getCharacterPosition(final int bytePosition) {
+		if (size == 0)
+			return bytePosition;
 
-		// Compute difference from ceiling byte position
-		final Entry<Integer, Integer> floorEntry = cache.floorEntry(bytePosition);
-		if (floorEntry != null)
-			return bytePosition - floorEntry.getValue();
+		// Use difference of the nearest multi-byte character before given position
+		int index = Arrays.binarySearch(bytePositions, 0, size, bytePosition);
+		if (index < 0)
+			index = -index - 2;
+		if (index >= 0)
+			return bytePosition - deltas[index];
 
 		// No difference associated
 		return bytePosition;
 	}
 
-	/** @return Length of {@link CharBuffer} from given {@link String}. */
+	/**
+	 * @return <code>true</code> when source has no multi-byte character, byte and character positions are then the same.
+	 */
+	public boolean isIdentity() {
+		return size == 0;
+	}
+
+	/** @return Length of given {@link String}, in characters. */
 	public int getCharactersLength() {
 		return charactersLength;
 	}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.ast.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.koneki.ldt.core.internal.Activator;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelConstants;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelReader;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelWriter;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * On disk cache of valid {@link LuaSourceRoot}s, it survives IDE restarts.
+ *
+ * Entries are keyed by a hash of the source and module name, so an unchanged file is loaded without any Lua VM involvement. Each entry also records
+ * the binary format and models builder versions, entries written by another version are ignored and removed.
+ */
+public final class PersistentModelCache {
+
+	private static final int MAGIC = 0x4C444D43; // LDMC
+	private static final String CACHE_FOLDER = "models"; //$NON-NLS-1$
+	private static final String ENTRY_EXTENSION = ".model"; //$NON-NLS-1$
+	private static final String CHARSET = "UTF-8"; //$NON-NLS-1$
+
+	/** Entries are trimmed to this quantity, least recently used first */
+	private static final int MAX_ENTRIES = 20000;
+
+	private static File cacheFolder;
+	private static String buildersVersion;
+
+	private PersistentModelCache() {
+	}
+
+	/**
+	 * @return model previously stored for this source and module name, <code>null</code> when there is none.
+	 */
+	public static LuaSourceRoot load(final String source, final String moduleName) {
+		final File entry = getEntry(source, moduleName);
+		if (entry == null || !entry.isFile())
+			return null;
+
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+			if (input.readInt() != MAGIC || input.readInt() != BinaryModelConstants.FORMAT_VERSION || !getBuildersVersion().equals(input.readUTF())) {
+				// Outdated entry
+				input.close();
+				input = null;
+				entry.delete();
+				return null;
+			}
+			final LuaSourceRoot root = BinaryModelReader.read(IOUtils.toByteArray(input));
+
+			// Keep track of usage for trimming
+			entry.setLastModified(System.currentTimeMillis());
+			return root;
+		} catch (final IOException e) {
+			Activator.logWarning(NLS.bind("Unable to read cached model {0}.", entry.getPath()), e); //$NON-NLS-1$
+			IOUtils.closeQuietly(input);
+			input = null;
+			entry.delete();
+			return null;
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * Stores a valid model for this source and module name, models with errors are ignored.
+	 */
+	public static void store(final String source, final String moduleName, final LuaSourceRoot root) {
+		if (root == null || root.hasError())
+			return;
+		final File entry = getEntry(source, moduleName);
+		if (entry == null)
+			return;
+
+		// Write in a temporary file first, so that concurrent readers never see partial entries
+		File temporary = null;
+		DataOutputStream output = null;
+		try {
+			temporary = File.createTempFile(entry.getName(), null, entry.getParentFile());
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			output.writeInt(MAGIC);
+			output.writeInt(BinaryModelConstants.FORMAT_VERSION);
+			output.writeUTF(getBuildersVersion());
+			BinaryModelWriter.write(root, output);
+			output.close();
+			output = null;
+
+			if (!temporary.renameTo(entry)) {
+				// Entry may have been written meanwhile by an other thread
+				temporary.delete();
+			}
+		} catch (final IOException e) {
+			Activator.logWarning(NLS.bind("Unable to cache model of {0}.", moduleName), e); //$NON-NLS-1$
+			IOUtils.closeQuietly(output);
+			output = null;
+			if (temporary != null)
+				temporary.delete();
+		} finally {
+			IOUtils.closeQuietly(output);
+		}
+	}
+
+	private static File getEntry(final String source, final String moduleName) {
+		final File folder = getCacheFolder();
+		if (folder == null)
+			return null;
+		final String key = computeKey(source, moduleName);
+		if (key == null)
+			return null;
+		return new File(folder, key + ENTRY_EXTENSION);
+	}
+
+	private static synchronized File getCacheFolder() {
+		if (cacheFolder == null) {
+			final Activator activator = Activator.getDefault();
+			if (activator == null)
+				return null;
+			final File folder = activator.getStateLocation().append(CACHE_FOLDER).toFile();
+			if (!folder.isDirectory() && !folder.mkdirs())
+				return null;
+			trim(folder);
+			cacheFolder = folder;
+		}
+		return cacheFolder;
+	}
+
+	/**
+	 * Removes least recently used entries when there are too many of them
+	 */
+	private static void trim(final File folder) {
+		final File[] entries = folder.listFiles();
+		if (entries == null || entries.length <= MAX_ENTRIES)
+			return;
+
+		Arrays.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(final File f1, final File f2) {
+				final long m1 = f1.lastModified();
+				final long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < entries.length - MAX_ENTRIES; i++) {
+			entries[i].delete();
+		}
+	}
+
+	static synchronized String getBuildersVersion() {
+		if (buildersVersion == null) {
+			final Activator activator = Activator.getDefault();
+			buildersVersion = activator != null ? activator.getBundle().getVersion().toString() : ""; //$NON-NLS-1$
+		}
+		return buildersVersion;
+	}
+
+	static String computeKey(final String source, final String moduleName) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			if (moduleName != null)
+				digest.update(moduleName.getBytes(CHARSET));
+			digest.update((byte) 0);
+			digest.update(source.getBytes(CHARSET));
+
+			final StringBuilder key = new StringBuilder();
+			for (final byte b : digest.digest()) {
+				key.append(Character.forDigit((b >> 4) & 0xF, 16));
+				key.append(Character.forDigit(b & 0xF, 16));
+			}
+			return key.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			Activator.logWarning("Unable to compute model cache key.", e); //$NON-NLS-1$
+		} catch (final UnsupportedEncodingException e) {
+			Activator.logWarning("Unable to compute model cache key.", e); //$NON-NLS-1$
+		}
+		return null;
+	}
+}
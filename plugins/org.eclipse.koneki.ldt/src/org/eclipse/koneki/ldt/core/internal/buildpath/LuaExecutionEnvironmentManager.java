@@ -21,7 +21,9 @@ import java.net.URL;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
@@ -45,6 +47,7 @@ import org.eclipse.dltk.core.IBuildpathEntry;
 import org.eclipse.dltk.core.IScriptProject;
 import org.eclipse.dltk.core.ModelException;
 import org.eclipse.koneki.ldt.core.internal.Activator;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.ExecutionEnvironmentIndex;
 import org.osgi.framework.Bundle;
 
 public final class LuaExecutionEnvironmentManager {
@@ -56,11 +59,61 @@ public final class LuaExecutionEnvironmentManager {
 
 	private static final String INSTALLATION_FOLDER = "ee"; //$NON-NLS-1$
 
+	/** Manifests already read, by absolute path of the file they were read from */
+	private static final Map<String, Manifest> MANIFESTS = new HashMap<String, Manifest>();
+
+	/**
+	 * Package name and version read from a manifest, along with the state of the file it was read from
+	 */
+	private static final class Manifest {
+		private final String name;
+		private final String version;
+		private final long length;
+		private final long lastModified;
+
+		private Manifest(final String name, final String version, final File file) {
+			this.name = name;
+			this.version = version;
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+		}
+
+		private boolean isUpToDate(final File file) {
+			return length == file.length() && lastModified == file.lastModified();
+		}
+	}
+
 	private LuaExecutionEnvironmentManager() {
 
 	}
 
+	/**
+	 * @return manifest read from this file, unless the file changed since, <code>null</code> when it has to be read.
+	 */
+	private static Manifest getCachedManifest(final File file) {
+		synchronized (MANIFESTS) {
+			final Manifest manifest = MANIFESTS.get(file.getAbsolutePath());
+			if (manifest != null && manifest.isUpToDate(file))
+				return manifest;
+			return null;
+		}
+	}
+
+	private static Manifest cacheManifest(final File file, final String manifestString) throws CoreException {
+		final Manifest manifest = parseManifest(manifestString, file);
+		synchronized (MANIFESTS) {
+			MANIFESTS.put(file.getAbsolutePath(), manifest);
+		}
+		return manifest;
+	}
+
 	public static LuaExecutionEnvironment getExecutionEnvironmentFromCompressedFile(final String filePath) throws CoreException {
+		// zip file is opened only when it changed since its manifest was last read
+		final File file = new File(filePath);
+		final Manifest cached = getCachedManifest(file);
+		if (cached != null)
+			return new LuaExecutionEnvironment(cached.name, cached.version, null);
+
 		/*
 		 * Extract manifest file
 		 */
@@ -102,7 +155,8 @@ public final class LuaExecutionEnvironmentManager {
 					LuaExecutionEnvironmentConstants.MANIFEST_EXTENSION), null, IStatus.ERROR);
 		}
 
-		return getLuaExecutionEnvironmentFromManifest(manifestString, null);
+		final Manifest manifest = cacheManifest(file, manifestString);
+		return new LuaExecutionEnvironment(manifest.name, manifest.version, null);
 	}
 
 	private static LuaExecutionEnvironment getExecutionEnvironmentFromDir(final File executionEnvironmentDirectory) throws CoreException {
@@ -127,6 +181,12 @@ public final class LuaExecutionEnvironmentManager {
 			throwException(message, null, IStatus.ERROR);
 		}
 
+		// read it only when it changed since last time
+		final IPath installDirectory = new Path(executionEnvironmentDirectory.getPath());
+		final Manifest cached = getCachedManifest(manifests[0]);
+		if (cached != null)
+			return new LuaExecutionEnvironment(cached.name, cached.version, installDirectory);
+
 		// try to read it
 		InputStream manifestInputStream = null;
 		try {
@@ -145,11 +205,11 @@ public final class LuaExecutionEnvironmentManager {
 		}
 
 		// extract execution environment from manifest
-		return getLuaExecutionEnvironmentFromManifest(manifestString, new Path(executionEnvironmentDirectory.getPath()));
+		final Manifest manifest = cacheManifest(manifests[0], manifestString);
+		return new LuaExecutionEnvironment(manifest.name, manifest.version, installDirectory);
 	}
 
-	private static LuaExecutionEnvironment getLuaExecutionEnvironmentFromManifest(String manifestString, final IPath installDirectory)
-			throws CoreException {
+	private static Manifest parseManifest(String manifestString, final File file) throws CoreException {
 		/*
 		 * Match available package name
 		 */
@@ -175,7 +235,7 @@ public final class LuaExecutionEnvironmentManager {
 			throwException("Manifest from given file has no package name or version.", null, IStatus.ERROR); //$NON-NLS-1$
 		}
 
-		return new LuaExecutionEnvironment(name, version, installDirectory);
+		return new Manifest(name, version, file);
 	}
 
 	private static LuaExecutionEnvironment getExecutionEnvironmentFromContribution(IConfigurationElement contribution) throws CoreException {
@@ -337,10 +397,36 @@ public final class LuaExecutionEnvironmentManager {
 		// try to get installed Execution Environment to be sure, it is well installed
 		getInstalledExecutionEnvironment(ee.getID(), ee.getVersion());
 
+		// prebuild models of API files, so that they are not parsed through Metalua
+		buildAPIIndex(ee, installDirectory);
+
 		refreshDLTKModel(ee);
 		return ee;
 	}
 
+	private static void buildAPIIndex(final LuaExecutionEnvironment ee, final File installDirectory) {
+		final File apiArchive = new File(installDirectory, LuaExecutionEnvironmentConstants.EE_FILE_API_ARCHIVE);
+		if (!apiArchive.isFile())
+			return;
+		try {
+			ExecutionEnvironmentIndex.build(apiArchive, new File(installDirectory, ExecutionEnvironmentIndex.INDEX_FILE));
+		} catch (IOException e) {
+			// API files will be parsed as usual
+			Activator.logWarning(MessageFormat.format("Unable to index API of execution environment {0}", ee), e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Builds again indexes of installed execution environments which are missing, or were written by another version of models builders.
+	 */
+	public static void updateAPIIndexes() {
+		for (final LuaExecutionEnvironment ee : getInstalledExecutionEnvironments()) {
+			final File installDirectory = ee.getPath().toFile();
+			if (!ExecutionEnvironmentIndex.isUpToDate(new File(installDirectory, ExecutionEnvironmentIndex.INDEX_FILE)))
+				buildAPIIndex(ee, installDirectory);
+		}
+	}
+
 	private static IPath getInstallDirectory() {
 		return Activator.getDefault().getStateLocation().append(INSTALLATION_FOLDER);
 	}
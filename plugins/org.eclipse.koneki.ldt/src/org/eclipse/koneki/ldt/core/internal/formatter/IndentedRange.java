@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.internal.formatter;
+
+/**
+ * Indented code of the top-level statements enclosing a range of lines.
+ *
+ * @see LuaFormatterModule#indentRange(String, String, boolean, String, int, int)
+ */
+public final class IndentedRange {
+
+	private final String code;
+	private final int firstLine;
+	private final int lastLine;
+
+	public IndentedRange(final String code, final int firstLine, final int lastLine) {
+		this.code = code;
+		this.firstLine = firstLine;
+		this.lastLine = lastLine;
+	}
+
+	/**
+	 * @return indented code of lines from {@link #getFirstLine()} to {@link #getLastLine()}, without last line delimiter
+	 */
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * @return first line of enclosing statements, starting at 0
+	 */
+	public int getFirstLine() {
+		return firstLine;
+	}
+
+	/**
+	 * @return last line of enclosing statements, starting at 0
+	 */
+	public int getLastLine() {
+		return lastLine;
+	}
+}
@@ -12,10 +12,12 @@ package org.eclipse.koneki.ldt.core.internal.formatter;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.eclipse.koneki.ldt.core.internal.Activator;
 import org.eclipse.koneki.ldt.metalua.AbstractMetaLuaModule;
+import org.eclipse.osgi.util.NLS;
 
 import com.naef.jnlua.LuaRuntimeException;
 import com.naef.jnlua.LuaState;
@@ -25,16 +27,38 @@ import com.naef.jnlua.LuaState;
  * 
  * This class uses <strong>Metalua</strong> to gather information about source code depth and thus enable to modify if adequately.
  * 
+ * It is thread safe: each call runs in its own Lua state, idle states are kept for next calls.
+ * 
  * @author Kevin KIN-FOO <kkinfoo@sierrawireless.com>
  */
 public final class LuaFormatterModule extends AbstractMetaLuaModule {
 	public static final String FORMATTER_PATH = "/script/external"; //$NON-NLS-1$
 	public static final String FORMATTER_LIB_NAME = "luaformatter"; //$NON-NLS-1$
 	public static final String INDENTATION_FUNTION = "indentcode"; //$NON-NLS-1$
+	public static final String RANGE_INDENTATION_FUNTION = "indentrange"; //$NON-NLS-1$
+
+	/** Raises errors once given seconds elapsed, checked every 100000 instructions until hook is removed */
+	private static final String TIMEOUT_HOOK = "local seconds = ...\n" //$NON-NLS-1$
+			+ "local deadline = os.time() + seconds\n" //$NON-NLS-1$
+			+ "debug.sethook(function()\n" //$NON-NLS-1$
+			+ "  if os.time() > deadline then error('formatting took more than ' .. seconds .. ' seconds', 2) end\n" //$NON-NLS-1$
+			+ "end, '', 100000)"; //$NON-NLS-1$
 
-	private LuaState lua = null;
+	/** Idle states, each formatting call uses its own state */
+	private final LinkedList<LuaState> states = new LinkedList<LuaState>();
+	private final int maxIdleStates = Runtime.getRuntime().availableProcessors();
+	private final int timeout;
 
 	public LuaFormatterModule() {
+		this(0);
+	}
+
+	/**
+	 * @param timeout
+	 *            seconds after which a formatting call is aborted, source is then left as is. No timeout when 0.
+	 */
+	public LuaFormatterModule(final int timeout) {
+		this.timeout = timeout;
 	}
 
 	/**
@@ -51,25 +75,20 @@ public final class LuaFormatterModule extends AbstractMetaLuaModule {
 	 * @return Indented Lua source code
 	 */
 	public String indent(final String source, final String delimiter, final boolean indentInTable, final String tabulation) {
-		// Load function
-		if (lua == null)
-			lua = loadLuaModule();
-
-		pushLuaModule(lua);
-		lua.getField(-1, INDENTATION_FUNTION);
-		lua.pushString(source);
-		lua.pushString(delimiter);
-		lua.pushBoolean(indentInTable);
-		lua.pushString(tabulation);
+		final LuaState lua = acquire();
 		try {
-			lua.call(4, 1);
-		} catch (final LuaRuntimeException e) {
-			Activator.logWarning(Messages.LuaSourceFormatIndentationError, e);
-			return source;
+			pushLuaModule(lua);
+			lua.getField(-1, INDENTATION_FUNTION);
+			lua.pushString(source);
+			lua.pushString(delimiter);
+			lua.pushBoolean(indentInTable);
+			lua.pushString(tabulation);
+			if (!call(lua, 4, 1))
+				return source;
+			return lua.toString(-1);
+		} finally {
+			release(lua);
 		}
-		final String formattedCode = lua.toString(-1);
-		// lua.close();
-		return formattedCode;
 	}
 
 	/**
@@ -89,24 +108,159 @@ public final class LuaFormatterModule extends AbstractMetaLuaModule {
 	 * @see #indent(String, String, String, int)
 	 */
 	public String indent(final String source, final String delimiter, final boolean indentInTable, final int tabSize, final int indentationSize) {
-		if (lua == null)
-			lua = loadLuaModule();
-		pushLuaModule(lua);
-		lua.getField(-1, INDENTATION_FUNTION);
-		lua.pushString(source);
-		lua.pushString(delimiter);
-		lua.pushBoolean(indentInTable);
-		lua.pushInteger(tabSize);
-		lua.pushInteger(indentationSize);
+		final LuaState lua = acquire();
+		try {
+			pushLuaModule(lua);
+			lua.getField(-1, INDENTATION_FUNTION);
+			lua.pushString(source);
+			lua.pushString(delimiter);
+			lua.pushBoolean(indentInTable);
+			lua.pushInteger(tabSize);
+			lua.pushInteger(indentationSize);
+			if (!call(lua, 5, 1))
+				return source;
+			return lua.toString(-1);
+		} finally {
+			release(lua);
+		}
+	}
+
+	/**
+	 * Indents only the top-level statements enclosing given lines. Only those statements are parsed, they are indented as when indenting the whole
+	 * source.
+	 * 
+	 * @param source
+	 *            Lua code containing lines to indent
+	 * @param delimiter
+	 *            Line delimiter, <code>\n</code> for Linux and Unix
+	 * @param indentInTable
+	 *            Indicates if formating is required for table values
+	 * @param tabulation
+	 *            String used as tabulation, it could be one or several white space character like <code>' '</code> of <code>'\t'</code>
+	 * @param firstLine
+	 *            First line to indent, starting at 0
+	 * @param lastLine
+	 *            Last line to indent
+	 * @return Indented enclosing statements, <code>null</code> when source can not be indented
+	 */
+	public IndentedRange indentRange(final String source, final String delimiter, final boolean indentInTable, final String tabulation,
+			final int firstLine, final int lastLine) {
+		final LuaState lua = acquire();
+		try {
+			pushLuaModule(lua);
+			lua.getField(-1, RANGE_INDENTATION_FUNTION);
+			lua.pushString(source);
+			lua.pushString(delimiter);
+			lua.pushBoolean(indentInTable);
+			lua.pushInteger(firstLine + 1);
+			lua.pushInteger(lastLine + 1);
+			lua.pushString(tabulation);
+			return callIndentRange(lua, 6);
+		} finally {
+			release(lua);
+		}
+	}
+
+	/**
+	 * Indents only the top-level statements enclosing given lines, mixing tabulation and spaces.
+	 * 
+	 * @param tabSize
+	 *            Count of spaces a tabulation mean
+	 * @param indentationSize
+	 *            of spaces an indentation mean
+	 * @see #indentRange(String, String, boolean, String, int, int)
+	 */
+	public IndentedRange indentRange(final String source, final String delimiter, final boolean indentInTable, final int tabSize,
+			final int indentationSize, final int firstLine, final int lastLine) {
+		final LuaState lua = acquire();
 		try {
-			lua.call(5, 1);
+			pushLuaModule(lua);
+			lua.getField(-1, RANGE_INDENTATION_FUNTION);
+			lua.pushString(source);
+			lua.pushString(delimiter);
+			lua.pushBoolean(indentInTable);
+			lua.pushInteger(firstLine + 1);
+			lua.pushInteger(lastLine + 1);
+			lua.pushInteger(tabSize);
+			lua.pushInteger(indentationSize);
+			return callIndentRange(lua, 7);
+		} finally {
+			release(lua);
+		}
+	}
+
+	/**
+	 * Closes idle states. Module remains usable, next calls create new states.
+	 */
+	public void dispose() {
+		synchronized (states) {
+			for (final LuaState lua : states) {
+				lua.close();
+			}
+			states.clear();
+		}
+	}
+
+	private IndentedRange callIndentRange(final LuaState lua, final int argumentCount) {
+		if (!call(lua, argumentCount, 3) || lua.isNil(-3))
+			return null;
+		return new IndentedRange(lua.toString(-3), lua.toInteger(-2) - 1, lua.toInteger(-1) - 1);
+	}
+
+	/**
+	 * Calls formatting function, aborting it after timeout.
+	 * 
+	 * @return false when formatting failed, error is logged
+	 */
+	private boolean call(final LuaState lua, final int argumentCount, final int resultCount) {
+		final long start = System.currentTimeMillis();
+		try {
+			if (timeout > 0) {
+				lua.load(TIMEOUT_HOOK, "timeoutHook"); //$NON-NLS-1$
+				lua.pushInteger(timeout);
+				lua.call(1, 0);
+			}
+			lua.call(argumentCount, resultCount);
+			return true;
 		} catch (final LuaRuntimeException e) {
-			Activator.logWarning(Messages.LuaSourceFormatIndentationError, e);
-			return source;
+			if (timeout > 0 && System.currentTimeMillis() - start > timeout * 1000L)
+				Activator.logWarning(NLS.bind(Messages.LuaSourceFormatTimeoutError, timeout), e);
+			else
+				Activator.logWarning(Messages.LuaSourceFormatIndentationError, e);
+			return false;
+		} finally {
+			if (timeout > 0) {
+				lua.getGlobal("debug"); //$NON-NLS-1$
+				lua.getField(-1, "sethook"); //$NON-NLS-1$
+				lua.call(0, 0);
+				lua.pop(1);
+			}
+		}
+	}
+
+	/**
+	 * @return an idle state, or a new one when all are in use
+	 */
+	private LuaState acquire() {
+		synchronized (states) {
+			if (!states.isEmpty())
+				return states.removeFirst();
+		}
+		// Script folders are cached without synchronization
+		synchronized (this) {
+			return loadLuaModule();
+		}
+	}
+
+	private void release(final LuaState lua) {
+		lua.setTop(0);
+		synchronized (states) {
+			if (states.size() < maxIdleStates) {
+				states.addFirst(lua);
+				return;
+			}
 		}
-		final String formattedCode = lua.toString(-1);
-		// lua.close();
-		return formattedCode;
+		lua.close();
 	}
 
 	/**
@@ -17,6 +17,7 @@ public class Messages extends NLS {
 	private static final String BUNDLE_NAME = "org.eclipse.koneki.ldt.core.internal.formatter.messages"; //$NON-NLS-1$
 	public static String LuaSourceFormatDepthError;
 	public static String LuaSourceFormatIndentationError;
+	public static String LuaSourceFormatTimeoutError;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -15,9 +15,10 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ TestExpressions.class, TestLuaBinaryOperations.class, TestLuaSourceParser.class, TestModuleDeclaration.class,
-		TestMultipleParsing.class, TestSourceElementRequestVisitor.class, TestStatements.class, TestTables.class, TestUnaryOperations.class,
-		TestVisitor.class })
+@SuiteClasses({ TestBinaryModel.class, TestExecutionEnvironmentIndex.class, TestExpressions.class, TestGlobalVarsIndex.class,
+		TestIncrementalParsing.class, TestLuaBinaryOperations.class, TestLuaSourceParser.class, TestModelTransfer.class, TestModuleDeclaration.class,
+		TestMultipleParsing.class, TestOffsetFixer.class, TestOffsetIndex.class, TestSourceElementRequestVisitor.class, TestStatements.class,
+		TestTables.class, TestTypeResolutionCache.class, TestUnaryOperations.class, TestVisitor.class })
 public class AllASTTests {
 
 }
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelReader;
+import org.eclipse.koneki.ldt.core.internal.ast.models.BinaryModelWriter;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Identifier;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.LuaSourceParserFactory;
+import org.eclipse.koneki.ldt.core.tests.internal.ast.utils.CollectVisitor;
+import org.eclipse.koneki.ldt.core.tests.internal.ast.utils.DummyReporter;
+import org.eclipse.koneki.ldt.core.tests.internal.ast.utils.TraceVisitor;
+
+/**
+ * Checks that a model written in binary form is read back identically.
+ */
+public class TestBinaryModel extends TestCase {
+
+	private static final String CODE = "---\n-- @module m\nlocal m = {}\n" //$NON-NLS-1$
+			+ "---\n-- @type t\n-- @field #string name\n\n" //$NON-NLS-1$
+			+ "---\n-- @function [parent=#m] f\n-- @param #number n\n-- @return #t\nfunction m.f(n) local v = n + 1 return v end\n" //$NON-NLS-1$
+			+ "local z = m.f(1) z.name:upper() g = '\u00e9' return m\n"; //$NON-NLS-1$
+
+	/** Strings with bytes escaped on Lua side */
+	private static final String DOCUMENTATION = "Caf\u00e9 \u007f \u20ac"; //$NON-NLS-1$
+
+	public void testRoundTrip() throws Exception {
+		final ModuleSource source = new ModuleSource("m", CODE); //$NON-NLS-1$
+		final LuaSourceRoot original = (LuaSourceRoot) new LuaSourceParserFactory().createSourceParser().parse(source, new DummyReporter());
+		assertFalse("Sample code should be valid", original.hasError()); //$NON-NLS-1$
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryModelWriter.write(original, bytes);
+		final LuaSourceRoot copy = BinaryModelReader.read(bytes.toByteArray());
+
+		assertEquals("Source length differs", original.sourceEnd(), copy.sourceEnd()); //$NON-NLS-1$
+		assertEquals("Global variables differ", original.getFileapi().getGlobalvars().keySet(), copy.getFileapi().getGlobalvars().keySet()); //$NON-NLS-1$
+		assertEquals("Types differ", original.getFileapi().getTypes().keySet(), copy.getFileapi().getTypes().keySet()); //$NON-NLS-1$
+
+		final TraceVisitor originalTrace = new TraceVisitor();
+		original.getInternalContent().traverse(originalTrace);
+		final TraceVisitor copyTrace = new TraceVisitor();
+		copy.getInternalContent().traverse(copyTrace);
+		assertEquals("Internal content differs", originalTrace.getTrace(), copyTrace.getTrace()); //$NON-NLS-1$
+
+		// Occurrences are shared nodes, definitions must be restored
+		final CollectVisitor originalIdentifiers = new CollectVisitor();
+		original.traverse(originalIdentifiers);
+		final CollectVisitor copyIdentifiers = new CollectVisitor();
+		copy.traverse(copyIdentifiers);
+		final Identifier[] originalIds = originalIdentifiers.getASTNode(Identifier.class);
+		final Identifier[] copyIds = copyIdentifiers.getASTNode(Identifier.class);
+		assertEquals("Identifier count differs", originalIds.length, copyIds.length); //$NON-NLS-1$
+		for (int i = 0; i < originalIds.length; i++) {
+			assertEquals("Identifier definition differs", originalIds[i].getDefinition() == null, copyIds[i].getDefinition() == null); //$NON-NLS-1$
+			if (originalIds[i].getDefinition() != null)
+				assertEquals("Identifier definition differs", originalIds[i].getDefinition().getName(), copyIds[i].getDefinition().getName()); //$NON-NLS-1$
+		}
+	}
+
+	public void testEscapedStrings() throws Exception {
+		final ModuleSource source = new ModuleSource("m", "---\n-- " + DOCUMENTATION + "\n-- @module m\nreturn {}\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		final LuaSourceRoot original = (LuaSourceRoot) new LuaSourceParserFactory().createSourceParser().parse(source, new DummyReporter());
+		assertFalse("Sample code should be valid", original.hasError()); //$NON-NLS-1$
+		assertTrue("Documentation should survive Lua side encoding", original.getFileapi().getDocumentation().contains(DOCUMENTATION)); //$NON-NLS-1$
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryModelWriter.write(original, bytes);
+		final LuaSourceRoot copy = BinaryModelReader.read(bytes.toByteArray());
+		assertEquals("Documentation differs", original.getFileapi().getDocumentation(), copy.getFileapi().getDocumentation()); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.ExecutionEnvironmentIndex;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.LuaSourceParserFactory;
+import org.eclipse.koneki.ldt.core.tests.internal.ast.utils.DummyReporter;
+
+/**
+ * Checks that models prebuilt from an API archive are the ones built by the parser.
+ */
+@SuppressWarnings("nls")
+public class TestExecutionEnvironmentIndex extends TestCase {
+
+	private static final String MODULE = "---\n-- @module m\nlocal m = {}\n---\n-- @type t\n-- @field #string name\n\n"
+			+ "---\n-- @function [parent=#m] f\n-- @param #number n\n-- @return #t\n\n---\n-- @field [parent=#global] #m m\nreturn nil\n";
+	private static final String PACKAGE = "---\n-- @module p\nlocal p = {}\n---\n-- @function [parent=#p] g\n-- @return #string '\u00e9'\nreturn nil\n";
+	private static final String INVALID = "local function (";
+
+	private File folder;
+
+	@Override
+	protected void setUp() throws Exception {
+		folder = File.createTempFile("ee", "");
+		assertTrue(folder.delete() && folder.mkdir());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(folder);
+	}
+
+	public void testPrebuiltModels() throws Exception {
+		final File archive = new File(folder, "api.zip");
+		final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			addEntry(zip, "m.lua", MODULE);
+			addEntry(zip, "p/init.lua", PACKAGE);
+			addEntry(zip, "invalid.lua", INVALID);
+		} finally {
+			zip.close();
+		}
+
+		final File indexFile = new File(folder, ExecutionEnvironmentIndex.INDEX_FILE);
+		ExecutionEnvironmentIndex.build(archive, indexFile);
+		final ExecutionEnvironmentIndex index = ExecutionEnvironmentIndex.open(indexFile);
+		assertNotNull("Index should be readable", index);
+		assertEquals("Only valid modules should be indexed", 2, index.size());
+
+		assertSameModel("m", MODULE, index);
+		assertSameModel("p", PACKAGE, index);
+		assertNull("Invalid module should not be indexed", index.get(INVALID, "invalid"));
+		assertNull("Changed module should not be found", index.get(MODULE + " ", "m"));
+	}
+
+	public void testOutdatedIndex() throws Exception {
+		final File archive = new File(folder, "api.zip");
+		final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			addEntry(zip, "m.lua", MODULE);
+		} finally {
+			zip.close();
+		}
+
+		final File indexFile = new File(folder, ExecutionEnvironmentIndex.INDEX_FILE);
+		assertFalse("Missing index should be built", ExecutionEnvironmentIndex.isUpToDate(indexFile));
+
+		// Same magic number, other format version
+		final DataOutputStream output = new DataOutputStream(new FileOutputStream(indexFile));
+		try {
+			output.writeInt(0x4C444549);
+			output.writeInt(-1);
+		} finally {
+			output.close();
+		}
+		assertFalse("Index of another version should be built again", ExecutionEnvironmentIndex.isUpToDate(indexFile));
+		assertEquals("Index of another version should be empty", 0, ExecutionEnvironmentIndex.open(indexFile).size());
+
+		ExecutionEnvironmentIndex.build(archive, indexFile);
+		assertTrue("Built index should be up to date", ExecutionEnvironmentIndex.isUpToDate(indexFile));
+		assertEquals("Built index should hold the module", 1, ExecutionEnvironmentIndex.open(indexFile).size());
+	}
+
+	private static void assertSameModel(final String moduleName, final String source, final ExecutionEnvironmentIndex index) {
+		final LuaSourceRoot parsed = (LuaSourceRoot) new LuaSourceParserFactory().createSourceParser().parse(new ModuleSource(moduleName, source),
+				new DummyReporter());
+		final LuaSourceRoot prebuilt = index.get(source, moduleName);
+		assertNotNull("Module " + moduleName + " should be indexed", prebuilt);
+		assertEquals("Source length differs", parsed.sourceEnd(), prebuilt.sourceEnd());
+		assertEquals("Global variables differ", parsed.getFileapi().getGlobalvars().keySet(), prebuilt.getFileapi().getGlobalvars().keySet());
+		assertEquals("Types differ", parsed.getFileapi().getTypes().keySet(), prebuilt.getFileapi().getTypes().keySet());
+	}
+
+	private static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static void addEntry(final ZipOutputStream zip, final String name, final String content) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		zip.write(content.getBytes("UTF-8"));
+		zip.closeEntry();
+	}
+}
@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Item;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.LuaFileAPI;
+
+/**
+ * Checks that global vars found by prefix through the index of {@link LuaFileAPI} are the ones a scan of all global vars gives.
+ */
+@SuppressWarnings("nls")
+public class TestGlobalVarsIndex extends TestCase {
+
+	private static final String[] NAMES = { "print", "pairs", "ipairs", "Print", "PRINTER", "p", "pcall", "string", "_G", "_VERSION", "a", "ab",
+			"abc", "Abd" };
+
+	private static final String[] PREFIXES = { "p", "P", "pr", "print", "printer", "printers", "_", "_v", "a", "ab", "abc", "abcd", "z", "s" };
+
+	public void testSameGlobalVars() {
+		final LuaFileAPI fileAPI = new LuaFileAPI();
+		for (final String name : NAMES) {
+			final Item item = new Item();
+			item.setName(name);
+			fileAPI.addGlobalVar(item);
+		}
+
+		for (final String prefix : PREFIXES) {
+			final Set<Item> expected = new HashSet<Item>();
+			for (final Item item : fileAPI.getGlobalvars().values()) {
+				if (item.getName().toLowerCase().startsWith(prefix.toLowerCase()))
+					expected.add(item);
+			}
+			assertEquals("Wrong global vars for " + prefix, expected, new HashSet<Item>(fileAPI.getGlobalvarsStartingWith(prefix)));
+		}
+	}
+
+	public void testIndexUpdatedOnAdd() {
+		final LuaFileAPI fileAPI = new LuaFileAPI();
+		final Item first = new Item();
+		first.setName("first");
+		fileAPI.addGlobalVar(first);
+		assertEquals(1, fileAPI.getGlobalvarsStartingWith("f").size());
+
+		final Item second = new Item();
+		second.setName("Fast");
+		fileAPI.addGlobalVar(second);
+		assertEquals(2, fileAPI.getGlobalvarsStartingWith("f").size());
+	}
+}
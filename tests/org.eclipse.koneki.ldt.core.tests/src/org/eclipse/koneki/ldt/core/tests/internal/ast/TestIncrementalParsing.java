@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Item;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.ModelsBuilderLuaModule;
+import org.eclipse.koneki.ldt.core.tests.internal.ast.utils.TraceVisitor;
+
+/**
+ * Checks that models of edited sources, built by parsing again only edited statements, are the ones a full parse gives.
+ */
+public class TestIncrementalParsing extends TestCase {
+
+	private static final String CODE = "---\n-- @module m\nlocal m = {}\n\n" //$NON-NLS-1$
+			+ "---\n-- @function [parent=#m] f\n-- @param #number n\nfunction m.f(n) local v = n + 1 return v end\n\n" //$NON-NLS-1$
+			+ "-- global\ng = '\u00e9' -- trailing [[x]]\n\n" //$NON-NLS-1$
+			+ "---\n-- @function [parent=#m] h\nfunction m.h(a) for i = 1, a do print(i, g) end end\n\n" //$NON-NLS-1$
+			+ "return m\n"; //$NON-NLS-1$
+
+	private final ModelsBuilderLuaModule builder = new ModelsBuilderLuaModule();
+
+	public void testInsertedStatement() throws Exception {
+		assertEditedModel(CODE, CODE.replace("-- global\n", "local print = print\n-- global\n")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testEditedFunction() throws Exception {
+		assertEditedModel(CODE, CODE.replace("local v = n + 1 return v", "local value, other = n * 2, g\n\treturn value")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testEditedComment() throws Exception {
+		assertEditedModel(CODE, CODE.replace("-- @function [parent=#m] h\n", "-- @function [parent=#m] h\n-- @param #number a\n")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testRemovedStatement() throws Exception {
+		assertEditedModel(CODE, CODE.replace("-- global\ng = '\u00e9' -- trailing [[x]]\n", "")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testCommentedOutStatement() throws Exception {
+		assertEditedModel(CODE, CODE.replace("-- global\n", "--[[ global ]]\n")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		// Long comment is closed after edited statement
+		assertEditedModel(CODE, CODE.replace("-- global\n", "--[[ global\n")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testSyntaxErrorThenFixed() throws Exception {
+		final String key = getName();
+		builder.buildIncrementalAST(CODE, "m", key); //$NON-NLS-1$
+		final String broken = CODE.replace("for i = 1, a do", "for i = 1, a"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue("Edited code should not be valid", builder.buildIncrementalAST(broken, "m", key).hasError()); //$NON-NLS-1$ //$NON-NLS-2$
+
+		final String fixed = CODE.replace("for i = 1, a do", "for j = 1, a do"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertSameModel(builder.buildAST(fixed, "m"), builder.buildIncrementalAST(fixed, "m", key)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void assertEditedModel(final String original, final String edited) throws Exception {
+		final String key = getName();
+		final LuaSourceRoot previous = builder.buildIncrementalAST(original, "m", key); //$NON-NLS-1$
+		assertFalse("Sample code should be valid", previous.hasError()); //$NON-NLS-1$
+		assertSameModel(builder.buildAST(edited, "m"), builder.buildIncrementalAST(edited, "m", key)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static void assertSameModel(final LuaSourceRoot full, final LuaSourceRoot incremental) throws Exception {
+		assertEquals("Errors differ", full.hasError(), incremental.hasError()); //$NON-NLS-1$
+		assertEquals("Source length differs", full.sourceEnd(), incremental.sourceEnd()); //$NON-NLS-1$
+		assertEquals("Global variables differ", full.getFileapi().getGlobalvars().keySet(), incremental.getFileapi().getGlobalvars().keySet()); //$NON-NLS-1$
+		for (final Item global : full.getFileapi().getGlobalvars().values()) {
+			final Item other = incremental.getFileapi().getGlobalvars().get(global.getName());
+			assertEquals("Global variable position differs", global.sourceStart(), other.sourceStart()); //$NON-NLS-1$
+			assertEquals("Global variable documentation differs", global.getDocumentation(), other.getDocumentation()); //$NON-NLS-1$
+		}
+		assertEquals("Types differ", full.getFileapi().getTypes().keySet(), incremental.getFileapi().getTypes().keySet()); //$NON-NLS-1$
+		assertEquals("Internal content differs", TraceVisitor.sortedTrace(full.getInternalContent()), //$NON-NLS-1$
+				TraceVisitor.sortedTrace(incremental.getInternalContent()));
+	}
+}
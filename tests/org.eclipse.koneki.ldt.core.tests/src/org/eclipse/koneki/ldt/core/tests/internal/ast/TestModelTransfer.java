@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.ModelsBuilderLuaModule;
+import org.eclipse.koneki.ldt.core.tests.internal.ast.utils.TraceVisitor;
+
+/**
+ * Compares models transferred from Lua node by node with the ones transferred as a single encoded string.
+ */
+public class TestModelTransfer extends TestCase {
+
+	private static final String CODE = "---\n-- @module m\nlocal m = {}\n" //$NON-NLS-1$
+			+ "---\n-- @type t\n-- @field #string name\n-- @field #number size\n\n" //$NON-NLS-1$
+			+ "---\n-- @function [parent=#m] f\n-- @param #number n\n-- @return #t\nfunction m.f(n) local v = n + 1 return v end\n" //$NON-NLS-1$
+			+ "---\n-- @function [parent=#t] method\n-- @param self\n-- @return #table { a = #string }\n\n" //$NON-NLS-1$
+			+ "local z = m.f(1) z.name:upper() g = '\u00e9' other.field = g\n" //$NON-NLS-1$
+			+ "for i = 1, 10 do local y = i * z.size print(y) end\n" //$NON-NLS-1$
+			+ "local function inner(a, b) return a + b, inner end\n"; //$NON-NLS-1$
+
+	private final ModelsBuilderLuaModule builder = new ModelsBuilderLuaModule();
+
+	public void testSameModel() throws Exception {
+		final String code = CODE + "return m\n"; //$NON-NLS-1$
+		final LuaSourceRoot nodeByNode = builder.buildAST(code, "m", false); //$NON-NLS-1$
+		final LuaSourceRoot binary = builder.buildAST(code, "m", true); //$NON-NLS-1$
+		assertFalse("Sample code should be valid", nodeByNode.hasError()); //$NON-NLS-1$
+		assertFalse("Sample code should be valid", binary.hasError()); //$NON-NLS-1$
+
+		assertEquals("Source length differs", nodeByNode.sourceEnd(), binary.sourceEnd()); //$NON-NLS-1$
+		assertEquals("Documentation differs", nodeByNode.getFileapi().getDocumentation(), binary.getFileapi().getDocumentation()); //$NON-NLS-1$
+		assertEquals("Global variables differ", nodeByNode.getFileapi().getGlobalvars().keySet(), binary.getFileapi().getGlobalvars().keySet()); //$NON-NLS-1$
+		assertEquals("Types differ", nodeByNode.getFileapi().getTypes().keySet(), binary.getFileapi().getTypes().keySet()); //$NON-NLS-1$
+		assertEquals("Returns differ", nodeByNode.getFileapi().getReturns().size(), binary.getFileapi().getReturns().size()); //$NON-NLS-1$
+		assertEquals("Unknown global variables differ", nodeByNode.getInternalContent().getUnknownglovalvars().size(), binary //$NON-NLS-1$
+				.getInternalContent().getUnknownglovalvars().size());
+		assertEquals("Internal content differs", TraceVisitor.sortedTrace(nodeByNode.getInternalContent()), //$NON-NLS-1$
+				TraceVisitor.sortedTrace(binary.getInternalContent()));
+	}
+
+	public void testSameProblem() {
+		final String code = "local a = 1\nif a then\n  print(a\nend\n"; //$NON-NLS-1$
+		final LuaSourceRoot nodeByNode = builder.buildAST(code, "m", false); //$NON-NLS-1$
+		final LuaSourceRoot binary = builder.buildAST(code, "m", true); //$NON-NLS-1$
+		assertTrue("Sample code should not be valid", nodeByNode.hasError()); //$NON-NLS-1$
+		assertTrue("Sample code should not be valid", binary.hasError()); //$NON-NLS-1$
+
+		assertEquals("Problem message differs", nodeByNode.getProblem().getMessage(), binary.getProblem().getMessage()); //$NON-NLS-1$
+		assertEquals("Problem line differs", nodeByNode.getProblem().getSourceLineNumber(), binary.getProblem().getSourceLineNumber()); //$NON-NLS-1$
+		assertEquals("Problem end differs", nodeByNode.getProblem().getSourceEnd(), binary.getProblem().getSourceEnd()); //$NON-NLS-1$
+	}
+}
@@ -19,6 +19,7 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.dltk.ast.declarations.ModuleDeclaration;
 import org.eclipse.dltk.ast.parser.ISourceParser;
 import org.eclipse.dltk.compiler.env.ModuleSource;
+import org.eclipse.dltk.compiler.problem.IProblem;
 import org.eclipse.dltk.core.DLTKCore;
 import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
 import org.eclipse.koneki.ldt.core.internal.ast.parser.LuaSourceParserFactory;
@@ -89,4 +90,21 @@ public class TestModuleDeclaration extends TestCase {
 		// Check if faulty ASTs are ignored, the fist AST should be given
 		assertSame("AST from cache shoul have been provided as well.", regular, fuzzy); //$NON-NLS-1$
 	}
+
+	/**
+	 * Syntax errors are located by the parser itself, in characters
+	 */
+	public void testSyntaxErrorLocation() {
+		ISourceParser parser = new LuaSourceParserFactory().createSourceParser();
+		DummyReporter reporter = new DummyReporter();
+
+		// Accented character takes two bytes, error is on second line
+		LuaSourceRoot root = (LuaSourceRoot) parser.parse(new ModuleSource("local a = '\u00e9'\nlocal b = = 2"), reporter); //$NON-NLS-1$
+		assertTrue("Syntax error has been ignored.", root.hasError()); //$NON-NLS-1$
+		assertEquals("Syntax error should be reported once.", 1, reporter.getProblems().size()); //$NON-NLS-1$
+
+		IProblem problem = reporter.getProblems().get(0);
+		assertEquals("Syntax error is not on the right line.", 1, problem.getSourceLineNumber()); //$NON-NLS-1$
+		assertEquals("Syntax error is not at the right offset.", 24, problem.getSourceStart()); //$NON-NLS-1$
+	}
 }
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.core.internal.ast.parser.OffsetFixer;
+
+/**
+ * Checks conversion of Lua byte offsets to Java character offsets.
+ */
+public class TestOffsetFixer extends TestCase {
+
+	public void testAscii() throws IOException {
+		final String source = "local a = 'ascii' -- only\nreturn a\n"; //$NON-NLS-1$
+		final OffsetFixer fixer = new OffsetFixer(source);
+		assertTrue("ASCII source should need no fix", fixer.isIdentity()); //$NON-NLS-1$
+		assertEquals("Characters length differs", source.length(), fixer.getCharactersLength()); //$NON-NLS-1$
+		assertPositions(source, fixer);
+	}
+
+	public void testMultiByteCharacters() throws IOException {
+		// Two and three bytes characters, null character and a surrogate pair
+		final String source = "-- qualit\u00e9 r\u00e9elle\nlocal e = '\u20ac\u0000\ud83d\ude00' -- \u65e5\u672c\nreturn e\n"; //$NON-NLS-1$
+		final OffsetFixer fixer = new OffsetFixer(source);
+		assertFalse("Source should need fixes", fixer.isIdentity()); //$NON-NLS-1$
+		assertPositions(source, fixer);
+	}
+
+	/**
+	 * Lua receives sources in modified UTF-8, as JNI encodes them, so every character boundary is checked against this encoding.
+	 */
+	private static void assertPositions(final String source, final OffsetFixer fixer) throws IOException {
+		for (int i = 0; i <= source.length(); i++) {
+			// Surrogate pairs are encoded separately, so positions between them are valid too
+			final int bytePosition = modifiedUTF8Length(source.substring(0, i));
+			assertEquals("Wrong character position for byte " + bytePosition, i, fixer.getCharacterPosition(bytePosition)); //$NON-NLS-1$
+		}
+	}
+
+	private static int modifiedUTF8Length(final String string) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeUTF(string);
+		// Skip length prefix
+		return bytes.size() - 2;
+	}
+}
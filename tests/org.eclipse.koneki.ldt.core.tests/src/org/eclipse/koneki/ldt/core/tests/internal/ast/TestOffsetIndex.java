@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+import org.eclipse.koneki.ldt.core.internal.ast.models.LuaASTUtils;
+import org.eclipse.koneki.ldt.core.internal.ast.models.MatchNodeVisitor;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.Item;
+import org.eclipse.koneki.ldt.core.internal.ast.models.common.LuaSourceRoot;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.Block;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LocalVar;
+import org.eclipse.koneki.ldt.core.internal.ast.models.file.LuaExpression;
+import org.eclipse.koneki.ldt.core.internal.ast.parser.ModelsBuilderLuaModule;
+
+/**
+ * Checks that offset queries answered through the index of internal content are the ones a traversal of the whole content gives.
+ */
+public class TestOffsetIndex extends TestCase {
+
+	private static final String CODE = "local m = {}\nlocal a = 1\n" //$NON-NLS-1$
+			+ "function m.f(n, other) local a, v = n + 1, other.field.sub return v(a):upper(), a end\n" //$NON-NLS-1$
+			+ "do local a = 'inner' print(a, m.f(a, {field = {}})) end\n" //$NON-NLS-1$
+			+ "for i = 1, 10 do local abc = i * a while abc > 0 do abc = abc - 1 end end\n" //$NON-NLS-1$
+			+ "return m\n"; //$NON-NLS-1$
+
+	private final ModelsBuilderLuaModule builder = new ModelsBuilderLuaModule();
+
+	public void testSameExpressions() throws Exception {
+		final LuaSourceRoot root = parse(CODE);
+		for (int start = 0; start <= CODE.length(); start++) {
+			for (int end = start; end <= Math.min(start + 8, CODE.length()); end++) {
+				assertSame("Wrong expression at " + start + ", " + end, traverseForExpression(root, start, end), //$NON-NLS-1$ //$NON-NLS-2$
+						LuaASTUtils.getLuaExpressionAt(root, start, end));
+			}
+		}
+	}
+
+	public void testSameLocalVars() throws Exception {
+		final LuaSourceRoot root = parse(CODE);
+		for (int offset = 0; offset <= CODE.length(); offset++) {
+			for (final String name : new String[] { "a", "v", "abc", "n" }) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				assertSame("Wrong local var " + name + " at " + offset, traverseForLocalVar(root, name, offset), //$NON-NLS-1$ //$NON-NLS-2$
+						LuaASTUtils.getClosestLocalVar(root, name, offset));
+			}
+			assertEquals("Wrong local vars at " + offset, new HashSet<Item>(LuaASTUtils.getLocalVars(root, offset, "a")), //$NON-NLS-1$ //$NON-NLS-2$
+					traverseForLocalVars(root, offset, "a")); //$NON-NLS-1$
+		}
+	}
+
+	public void testShadowedLocalVar() {
+		final LuaSourceRoot root = parse(CODE);
+		final int inner = CODE.indexOf("local a = 'inner'"); //$NON-NLS-1$
+		final Item item = LuaASTUtils.getClosestLocalVar(root, "a", CODE.indexOf("print(a") + "print(".length()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertNotNull("Local var should be found", item); //$NON-NLS-1$
+		assertTrue("Innermost local var should be found", item.sourceStart() > inner); //$NON-NLS-1$
+	}
+
+	private LuaSourceRoot parse(final String code) {
+		final LuaSourceRoot root = builder.buildAST(code, "m"); //$NON-NLS-1$
+		assertFalse("Sample code should be valid", root.hasError()); //$NON-NLS-1$
+		return root;
+	}
+
+	private static LuaExpression traverseForExpression(final LuaSourceRoot root, final int start, final int end) throws Exception {
+		final MatchNodeVisitor visitor = new MatchNodeVisitor(start, end, LuaExpression.class);
+		root.getInternalContent().getContent().traverse(visitor);
+		return (LuaExpression) visitor.getNode();
+	}
+
+	/**
+	 * Goes down in blocks containing offset, then looks for local vars from the innermost one.
+	 */
+	private static Item traverseForLocalVar(final LuaSourceRoot root, final String name, final int offset) throws Exception {
+		final Item[] result = new Item[1];
+		root.getInternalContent().getContent().traverse(new ASTVisitor() {
+			@Override
+			public boolean visit(final ASTNode node) throws Exception {
+				return node instanceof Block && node.sourceStart() <= offset && offset <= node.sourceEnd();
+			}
+
+			@Override
+			public boolean endvisit(final ASTNode node) throws Exception {
+				if (result[0] == null && node instanceof Block) {
+					for (final LocalVar localVar : ((Block) node).getLocalVars()) {
+						if (localVar.getVar().getName().equals(name))
+							result[0] = localVar.getVar();
+					}
+				}
+				return true;
+			}
+		});
+		return result[0];
+	}
+
+	private static Set<Item> traverseForLocalVars(final LuaSourceRoot root, final int offset, final String prefix) throws Exception {
+		final Set<String> names = new HashSet<String>();
+		final Set<Item> result = new HashSet<Item>();
+		root.getInternalContent().getContent().traverse(new ASTVisitor() {
+			@Override
+			public boolean visit(final ASTNode node) throws Exception {
+				return node instanceof Block && node.sourceStart() <= offset && offset <= node.sourceEnd();
+			}
+
+			@Override
+			public boolean endvisit(final ASTNode node) throws Exception {
+				if (node instanceof Block) {
+					for (final LocalVar localVar : ((Block) node).getLocalVars()) {
+						final Item item = localVar.getVar();
+						if (item.getName().toLowerCase().startsWith(prefix) && names.add(item.getName()))
+							result.add(item);
+					}
+				}
+				return true;
+			}
+		});
+		return result;
+	}
+}
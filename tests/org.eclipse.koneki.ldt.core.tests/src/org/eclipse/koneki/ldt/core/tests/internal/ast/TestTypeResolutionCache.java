@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.core.internal.ast.models.LuaASTUtils;
+import org.eclipse.koneki.ldt.core.internal.ast.models.LuaASTUtils.TypeResolution;
+import org.eclipse.koneki.ldt.core.internal.ast.models.TypeResolutionCache;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.InlineTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.PrimitiveTypeRef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.RecordTypeDef;
+import org.eclipse.koneki.ldt.core.internal.ast.models.api.TypeRef;
+
+/**
+ * Checks that type resolutions of {@link LuaASTUtils} are found in {@link TypeResolutionCache} when the same type reference is resolved again.
+ */
+public class TestTypeResolutionCache extends TestCase {
+
+	public void testRepeatedResolutionHitsCache() {
+		final RecordTypeDef record = new RecordTypeDef();
+		record.setName("record"); //$NON-NLS-1$
+		final TypeRef typeRef = new InlineTypeRef(record);
+
+		final TypeResolution first = LuaASTUtils.resolveType(null, typeRef);
+		assertNotNull("Inline type should be resolved", first); //$NON-NLS-1$
+		assertSame("Wrong type resolved", record, first.getTypeDef()); //$NON-NLS-1$
+
+		final long hits = TypeResolutionCache.getHitCount();
+		final TypeResolution second = LuaASTUtils.resolveType(null, typeRef);
+		assertEquals("Repeated resolution should hit cache", hits + 1, TypeResolutionCache.getHitCount()); //$NON-NLS-1$
+		assertSame("Repeated resolution should be the cached one", first, second); //$NON-NLS-1$
+	}
+
+	public void testMissingTypeIsCached() {
+		final TypeRef typeRef = new PrimitiveTypeRef("number"); //$NON-NLS-1$
+		assertNull("Primitive type should not be resolved", LuaASTUtils.resolveType(null, typeRef)); //$NON-NLS-1$
+
+		final long hits = TypeResolutionCache.getHitCount();
+		assertNull("Primitive type should not be resolved", LuaASTUtils.resolveType(null, typeRef)); //$NON-NLS-1$
+		assertEquals("Repeated resolution should hit cache", hits + 1, TypeResolutionCache.getHitCount()); //$NON-NLS-1$
+	}
+
+	public void testOtherReferenceMissesCache() {
+		final RecordTypeDef record = new RecordTypeDef();
+		LuaASTUtils.resolveType(null, new InlineTypeRef(record));
+
+		final long hits = TypeResolutionCache.getHitCount();
+		final TypeResolution resolution = LuaASTUtils.resolveType(null, new InlineTypeRef(record));
+		assertEquals("Another reference should not hit cache", hits, TypeResolutionCache.getHitCount()); //$NON-NLS-1$
+		assertSame("Wrong type resolved", record, resolution.getTypeDef()); //$NON-NLS-1$
+	}
+}
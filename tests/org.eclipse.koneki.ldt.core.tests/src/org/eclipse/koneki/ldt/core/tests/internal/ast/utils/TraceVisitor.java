@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.core.tests.internal.ast.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.dltk.ast.ASTNode;
+import org.eclipse.dltk.ast.ASTVisitor;
+
+/**
+ * Visit nodes and keep a trace of their types and positions
+ */
+public class TraceVisitor extends ASTVisitor {
+	private final List<String> trace = new ArrayList<String>();
+
+	@Override
+	public boolean visitGeneral(final ASTNode node) throws Exception {
+		trace.add(node.getClass().getSimpleName() + '[' + node.sourceStart() + ',' + node.sourceEnd() + ']');
+		return super.visitGeneral(node);
+	}
+
+	public List<String> getTrace() {
+		return trace;
+	}
+
+	/**
+	 * Order of local variables depends on Lua table iteration, which varies from a parse to another, so trace is sorted.
+	 *
+	 * @return sorted trace of node and its children
+	 */
+	public static List<String> sortedTrace(final ASTNode node) throws Exception {
+		final TraceVisitor visitor = new TraceVisitor();
+		node.traverse(visitor);
+		final List<String> trace = new ArrayList<String>(visitor.getTrace());
+		Collections.sort(trace);
+		return trace;
+	}
+}
@@ -20,8 +20,10 @@ import org.eclipse.koneki.ldt.lua.tests.internal.ast.models.both.BothModelTestSu
 import org.eclipse.koneki.ldt.lua.tests.internal.ast.models.internal.InternalModelTestSuite;
 import org.eclipse.koneki.ldt.lua.tests.internal.formatter.FourSpacesFormatterTestSuite;
 import org.eclipse.koneki.ldt.lua.tests.internal.formatter.MixedFormatterTestSuite;
+import org.eclipse.koneki.ldt.lua.tests.internal.formatter.RangeFormatterTestSuite;
 import org.eclipse.koneki.ldt.lua.tests.internal.formatter.TabFormatterTestSuite;
 import org.eclipse.koneki.ldt.lua.tests.internal.template.engine.JDMTemplateEngineTestSuite;
+import org.eclipse.koneki.ldt.lua.tests.internal.template.engine.SinglePassMarkDownTestCase;
 import org.eclipse.koneki.ldt.lua.tests.internal.template.engine.TemplateEngineTestSuite;
 
 public class AllLuaTests extends TestCase {
@@ -34,10 +36,12 @@ public class AllLuaTests extends TestCase {
 		suite.addTest(new TabFormatterTestSuite(ignore));
 		suite.addTest(new FourSpacesFormatterTestSuite(ignore));
 		suite.addTest(new MixedFormatterTestSuite(ignore));
+		suite.addTest(new RangeFormatterTestSuite(ignore));
 		suite.addTest(new InternalModelTestSuite(ignore));
 		suite.addTest(new TemplateEngineTestSuite(ignore));
 		suite.addTest(new JDMTemplateEngineTestSuite(ignore));
 		suite.addTest(new BothModelTestSuite(ignore));
+		suite.addTestSuite(SinglePassMarkDownTestCase.class);
 		return suite;
 	}
 }
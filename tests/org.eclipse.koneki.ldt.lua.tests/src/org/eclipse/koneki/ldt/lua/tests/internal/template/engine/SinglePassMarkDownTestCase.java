@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.lua.tests.internal.template.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.koneki.ldt.lua.tests.internal.Activator;
+
+import com.cforcoding.jmd.MarkDown;
+
+/**
+ * Checks that the single pass mode of {@link MarkDown} renders as the regular expressions pipeline, on doc comments of test files and on edge
+ * cases of the subset it handles.
+ */
+@SuppressWarnings("nls")
+public class SinglePassMarkDownTestCase extends TestCase {
+
+	/** Folders of Lua files whose doc comments are rendered */
+	private static final String[] DOC_COMMENT_FOLDERS = { "tests/apimodel/", "tests/templateengine/" };
+
+	private static final String[] EMPHASIS = { "*a* and *b*", "**bold** then *italic*", "***both***", "a * b * c", "2 * 3 * 4", "_under_score_",
+			"snake_case_name and other_name", "**unclosed", "*a**b*", "__init__ and __gc", "* not a list*", "*emphasis*  \nbreak", "x*y*z",
+			"**bold *nested* bold**", "_a_ *b* __c__ **d**" };
+
+	private static final String[] CODE_SPANS = { "`x = 1`", "`a_b*c`", "``code with ` tick``", "`1 2 3` and 4", "version 5.1, `table.insert(t, 1)`",
+			"`{}` and `[]`", "`<tag>` & `&amp;`", "text `\\n` escaped", "`*not emphasis*` *emphasis*", "unclosed `code", "`42`", "``", "` `",
+			"a `b` c `d` e" };
+
+	private static final String[] ESCAPES = { "a \\* b", "\\_x\\_", "\\`not code\\`", "back\\\\slash", "\\[not a link\\](x)", "1\\. not a list",
+			"&copy; 2013 & co", "a < b > c", "<b>bold</b> text", "5 &lt; 6", "100% *sure*" };
+
+	private static final String[] LISTS = { "Paragraph\n* item\n* item", "Paragraph\n\n* a\n* b", "Para\n\n1. one\n2. two\n\nAfter", "* a\n\n* b",
+			"* item\n  continued", "- dash\n- dash", "+ plus\n+ plus", "* a\n- b", "1. one\n* two", "* item\n\n  indented paragraph",
+			"* a\n    * nested", "Para\n\n* *emphasis* item\n* `code` item", "* [link](http://x.org)" };
+
+	private static final String[] BREAKS = { "line one  \nline two", "line  \n", "end  ", "a   \nb", "a \nb", "a\nb", "  leading spaces",
+			"para one\n\npara two", "para one\n\n\n\npara two", "a\r\nb  \r\nc", "a\rb" };
+
+	private static final String[] LINKS = { "[text](http://x.com)", "[t](http://x.com \"title\")", "[a_b](http://x/a_b)", "<http://auto.link>",
+			"see [this](http://a.org/*x*) *now*", "[empty]()", "[ref][1]\n\n[1]: http://x.org", "![image](http://x/i.png)" };
+
+	private static final String[] BLOCKS = { "", " ", "\n\n", "# Title", "Title\n=====", "Sub\n---", "> quote", "    code block", "\tcode",
+			"para\n\n    code", "***", "<div>html</div>", "a\n\n<p>html</p>" };
+
+	public void testEmphasis() {
+		assertSameRendering(EMPHASIS);
+	}
+
+	public void testCodeSpans() {
+		assertSameRendering(CODE_SPANS);
+	}
+
+	public void testEscapes() {
+		assertSameRendering(ESCAPES);
+	}
+
+	public void testLists() {
+		assertSameRendering(LISTS);
+	}
+
+	public void testLineBreaks() {
+		assertSameRendering(BREAKS);
+	}
+
+	public void testLinks() {
+		assertSameRendering(LINKS);
+	}
+
+	public void testOtherBlocks() {
+		assertSameRendering(BLOCKS);
+	}
+
+	public void testDocComments() throws IOException {
+		final List<String> comments = new ArrayList<String>();
+		for (final String folder : DOC_COMMENT_FOLDERS) {
+			final URL resource = Activator.getDefault().getBundle().getResource(folder);
+			collectDocComments(new File(FileLocator.toFileURL(resource).getPath()), comments);
+		}
+		assertFalse("Doc comments should be found", comments.isEmpty());
+		assertSameRendering(comments.toArray(new String[comments.size()]));
+	}
+
+	private static void assertSameRendering(final String[] texts) {
+		for (final String text : texts) {
+			assertEquals("Rendering differs for: " + text, new MarkDown().transform(text), new MarkDown(true).transform(text));
+		}
+	}
+
+	/**
+	 * Adds descriptions of doc comments of Lua files found in folder, that is comment lines from a <code>---</code> line to the first tag.
+	 */
+	private static void collectDocComments(final File folder, final List<String> comments) throws IOException {
+		final File[] files = folder.listFiles();
+		if (files == null)
+			return;
+		for (final File file : files) {
+			if (file.isDirectory()) {
+				collectDocComments(file, comments);
+			} else if (file.getName().endsWith(".lua")) {
+				readDocComments(file, comments);
+			}
+		}
+	}
+
+	private static void readDocComments(final File file, final List<String> comments) throws IOException {
+		StringBuilder comment = null;
+		boolean tags = false;
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.startsWith("---")) {
+					addComment(comment, comments);
+					comment = new StringBuilder(line.substring(3).trim());
+					tags = false;
+				} else if (comment != null && line.startsWith("--")) {
+					final String content = line.startsWith("-- ") ? line.substring(3) : line.substring(2);
+					tags |= content.trim().startsWith("@");
+					if (!tags)
+						comment.append('\n').append(content);
+				} else {
+					addComment(comment, comments);
+					comment = null;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		addComment(comment, comments);
+	}
+
+	private static void addComment(final StringBuilder comment, final List<String> comments) {
+		if (comment != null && comment.toString().trim().length() > 0)
+			comments.add(comment.toString());
+	}
+}
@@ -0,0 +1,68 @@
+--------------------------------------------------------------------------------
+-- Copyright (c) 2013 Sierra Wireless and others.
+-- All rights reserved. This program and the accompanying materials
+-- are made available under the terms of the Eclipse Public License v1.0
+-- which accompanies this distribution, and is available at
+-- http://www.eclipse.org/legal/epl-v10.html
+--
+-- Contributors:
+--     Sierra Wireless - initial API and implementation
+--------------------------------------------------------------------------------
+local formatter =  require 'luaformatter'
+local string =     require 'string'
+local javaassert = java.require("org.junit.Assert")
+
+-- Lines formatted at once
+local RANGESIZE = 3
+
+local function splitlines(source)
+	local lines = {}
+	for line in (source .. '\n'):gmatch('(.-)\n') do
+		lines[#lines + 1] = line
+	end
+	return lines
+end
+
+local M = {}
+function M.test(luainputpath, luareferencepath)
+
+	-- Load provided source
+	local luafile, errormessage = io.open(luainputpath, 'r')
+	assert(
+		luafile,
+		string.format('Unable to read from %s.\n%s', luainputpath, errormessage or '')
+	)
+	local luasource = luafile:read('*a')
+	luafile:close()
+
+	-- Load provided reference
+	local referenceFile, errormessage = io.open(luareferencepath)
+	assert(
+		referenceFile,
+		string.format('Unable to read reference from %s.\n%s', luareferencepath, errormessage or '')
+	)
+	local referencelines = splitlines(referenceFile:read('*a'))
+	referenceFile:close()
+
+	-- Format each range of lines and compare them with reference ones
+	local linecount = #splitlines(luasource)
+	for firstline = 1, linecount, RANGESIZE do
+		local lastline = math.min(linecount, firstline + RANGESIZE - 1)
+		local formattedCode, regionfirst = formatter.indentrange(luasource, '\n', true, firstline, lastline, '\t')
+		assert(
+			formattedCode,
+			string.format('Unable to format lines %d to %d of %s.\n', firstline, lastline, luainputpath)
+		)
+		local formattedlines = splitlines(formattedCode)
+		for line = firstline, lastline do
+			local status, errormessage = pcall( function()
+				javaassert:assertEquals(string.format("Formatting Error at line %d", line), referencelines[line], formattedlines[line - regionfirst + 1])
+			end)
+			if not status then
+				return nil, tostring(errormessage)
+			end
+		end
+	end
+	return true
+end
+return M
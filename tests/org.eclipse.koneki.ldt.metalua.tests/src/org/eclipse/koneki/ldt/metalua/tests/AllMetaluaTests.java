@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipse.koneki.ldt.metalua.tests;
 
+import org.eclipse.koneki.ldt.metalua.tests.internal.cases.TestLuaStateFactory;
 import org.eclipse.koneki.ldt.metalua.tests.internal.cases.TestMetalua;
+import org.eclipse.koneki.ldt.metalua.tests.internal.cases.TestMetaluaBundle;
 import org.eclipse.koneki.ldt.metalua.tests.internal.cases.TestMetaluaStateFactory;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -18,7 +20,7 @@ import org.junit.runners.Suite.SuiteClasses;
 
 // CHECKSTYLE:OFF
 @RunWith(Suite.class)
-@SuiteClasses({ TestMetalua.class, TestMetaluaStateFactory.class })
+@SuiteClasses({ TestLuaStateFactory.class, TestMetalua.class, TestMetaluaBundle.class, TestMetaluaStateFactory.class })
 public class AllMetaluaTests {
 	public static final String PLUGIN_ID = "org.eclipse.koneki.ldt.metalua.tests"; //$NON-NLS-1$
 }
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.metalua.tests.internal.cases;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.metalua.internal.MetaluaStateFactory;
+
+import com.naef.jnlua.LuaState;
+import com.naef.jnlua.eclipse.LuaStateFactory;
+
+/**
+ * Checks that states created from the snapshot of a template require the same modules, Metalua ones included.
+ */
+public class TestLuaStateFactory extends TestCase {
+
+	/** Loaded from sources, through Lua and Metalua loaders */
+	private static final String MODULE = "metalua.treequery"; //$NON-NLS-1$
+
+	@Override
+	protected void tearDown() throws Exception {
+		LuaStateFactory.getDefault().clear();
+		super.tearDown();
+	}
+
+	public void testSnapshot() {
+		final LuaState template = newState();
+		try {
+			LuaStateFactory.getDefault().require(template, getName(), MODULE);
+			assertEquals("Module should be on top of stack", 1, template.getTop()); //$NON-NLS-1$
+			assertFalse("Template should not preload modules", isPreloaded(template, MODULE)); //$NON-NLS-1$
+		} finally {
+			template.close();
+		}
+
+		final LuaState worker = newState();
+		try {
+			LuaStateFactory.getDefault().require(worker, getName(), MODULE);
+			assertEquals("Module should be on top of stack", 1, worker.getTop()); //$NON-NLS-1$
+			assertTrue("Module should be a table", worker.isTable(-1)); //$NON-NLS-1$
+			assertTrue("Module should be preloaded", isPreloaded(worker, MODULE)); //$NON-NLS-1$
+			assertTrue("Metalua compiler should be preloaded", isPreloaded(worker, "metalua.compiler")); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			worker.close();
+		}
+	}
+
+	public void testLoadersRestored() {
+		final LuaState template = newState();
+		try {
+			template.load("loaders = { unpack(package.loaders) }", "saveLoaders"); //$NON-NLS-1$ //$NON-NLS-2$
+			template.call(0, 0);
+			LuaStateFactory.getDefault().require(template, getName(), MODULE);
+
+			// Metalua adds its own loader
+			template.load("for i, loader in ipairs(loaders) do if package.loaders[i] ~= loader then return false end end return true", "checkLoaders"); //$NON-NLS-1$ //$NON-NLS-2$
+			template.call(0, 1);
+			assertTrue("Loaders should be restored", template.toBoolean(-1)); //$NON-NLS-1$
+		} finally {
+			template.close();
+		}
+	}
+
+	/**
+	 * @return Metalua state without precompiled modules, they would not be recorded, able to load Metalua sources
+	 */
+	private static LuaState newState() {
+		final LuaState state = MetaluaStateFactory.newLuaState(MetaluaStateFactory.sourcesPath());
+		state.load("require 'metalua.package'", "metaluaLoader"); //$NON-NLS-1$ //$NON-NLS-2$
+		state.call(0, 0);
+		return state;
+	}
+
+	private static boolean isPreloaded(final LuaState state, final String module) {
+		state.getGlobal("package"); //$NON-NLS-1$
+		state.getField(-1, "preload"); //$NON-NLS-1$
+		state.getField(-1, module);
+		final boolean preloaded = !state.isNil(-1);
+		state.pop(3);
+		return preloaded;
+	}
+}
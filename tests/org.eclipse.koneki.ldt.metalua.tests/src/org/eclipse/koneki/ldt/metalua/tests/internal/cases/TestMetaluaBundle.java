@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Sierra Wireless and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.koneki.ldt.metalua.tests.internal.cases;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.eclipse.koneki.ldt.metalua.internal.MetaluaBundle;
+import org.eclipse.koneki.ldt.metalua.internal.MetaluaStateFactory;
+
+import com.naef.jnlua.LuaException;
+import com.naef.jnlua.LuaState;
+
+/**
+ * Checks that precompiled Metalua modules are loaded as their sources.
+ */
+public class TestMetaluaBundle extends TestCase {
+
+	/** Needs the compiler and modules written in Metalua */
+	private static final String COLD_START = "require 'metalua.package' " //$NON-NLS-1$
+			+ "local compiler = require 'metalua.compiler'.new() " //$NON-NLS-1$
+			+ "require 'metalua.treequery' " //$NON-NLS-1$
+			+ "return compiler:ast_to_function(compiler:src_to_ast('return 6 * 7'))()"; //$NON-NLS-1$
+
+	public void testRoundTrip() throws Exception {
+		final Map<String, byte[]> modules = compile("metalua/walk.mlua", "checks.lua"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		MetaluaBundle.write(modules, output);
+		final Map<String, byte[]> read = MetaluaBundle.read(new ByteArrayInputStream(output.toByteArray()));
+		assertEquals("Modules should be read back", modules.keySet(), read.keySet()); //$NON-NLS-1$
+
+		final LuaState state = MetaluaStateFactory.newLuaState(MetaluaStateFactory.sourcesPath());
+		try {
+			MetaluaBundle.preload(state, read);
+			assertEquals("Stack should be left as is", 0, state.getTop()); //$NON-NLS-1$
+			assertEquals("Precompiled module should run", 42, coldStart(state)); //$NON-NLS-1$
+		} finally {
+			state.close();
+		}
+	}
+
+	public void testRejectedBundle() {
+		final Map<String, byte[]> modules = compile("checks.lua"); //$NON-NLS-1$
+		// Not a valid chunk header
+		modules.put("strict", new byte[] { 0x1b, 'L', 'u', 'a', 0x51, 0, 0, 0, 0 }); //$NON-NLS-1$
+
+		final LuaState state = MetaluaStateFactory.newLuaState(MetaluaStateFactory.sourcesPath());
+		try {
+			MetaluaBundle.preload(state, modules);
+			fail("Invalid bytecode should be rejected"); //$NON-NLS-1$
+		} catch (final LuaException e) {
+			state.getGlobal("package"); //$NON-NLS-1$
+			state.getField(-1, "preload"); //$NON-NLS-1$
+			state.getField(-1, "checks"); //$NON-NLS-1$
+			assertTrue("No module should be preloaded", state.isNil(-1)); //$NON-NLS-1$
+		} finally {
+			state.close();
+		}
+	}
+
+	private static int coldStart(final LuaState state) {
+		state.load(COLD_START, "coldStart"); //$NON-NLS-1$
+		state.call(0, 1);
+		final int result = state.toInteger(-1);
+		state.pop(1);
+		return result;
+	}
+
+	private static Map<String, byte[]> compile(final String... files) {
+		final Map<String, byte[]> modules = new TreeMap<String, byte[]>();
+		final LuaState state = MetaluaStateFactory.newLuaState(MetaluaStateFactory.sourcesPath());
+		try {
+			for (final String file : files) {
+				final String name = file.substring(0, file.lastIndexOf('.')).replace('/', '.');
+				modules.put(name, MetaluaBundle.compile(state, new File(MetaluaStateFactory.sourcesPath(), file), '@' + file));
+			}
+		} finally {
+			state.close();
+		}
+		return modules;
+	}
+}